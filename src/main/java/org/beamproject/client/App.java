@@ -21,9 +21,16 @@ package org.beamproject.client;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import static java.util.logging.Level.INFO;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 import org.beamproject.client.model.MainModel;
+import org.beamproject.client.util.TaskGraph;
 import org.beamproject.client.view.MainWindow;
 
 /**
@@ -37,18 +44,111 @@ public class App {
     public final static String CONFIG_DIRECTORY_PATH = System.getProperty("user.home") + File.separator + ".beam" + File.separator;
     public final static String CONFIG_PATH = CONFIG_DIRECTORY_PATH + "client.conf";
     public final static String ENCRYPTED_CONFIG_PATH = CONFIG_DIRECTORY_PATH + "client-encrypted.conf";
+    public final static String CONTACTS_PATH = CONFIG_DIRECTORY_PATH + "contacts.db";
+    public final static String HISTORY_DIRECTORY_PATH = CONFIG_DIRECTORY_PATH + "history" + File.separator;
+    /**
+     * If this system property is true, the application exits as soon as the
+     * window is shown. This is used for the training run of the class data
+     * sharing archive and for measuring the startup time.
+     */
+    public final static String EXIT_AFTER_STARTUP_PROPERTY = "beam.exitAfterStartup";
+    private final static Logger LOG = Logger.getLogger(App.class.getName());
+    private static Injector appInjector;
     private static MainWindow window;
     private static MainModel model;
 
+    /**
+     * Starts the application. The steps run as a {@link TaskGraph}, so that
+     * the window is constructed while the BouncyCastle provider is registered,
+     * the configurations are read and the keys are derived. The duration of
+     * every step is logged.
+     */
     public static void main(String args[]) {
-        setNativeLookAndFeel();
+        ExecutorService bootstrapExecutor = Executors.newCachedThreadPool();
+        TaskGraph bootstrap = new TaskGraph(bootstrapExecutor)
+                .add("look-and-feel", new Runnable() {
+                    @Override
+                    public void run() {
+                        setNativeLookAndFeel();
+                    }
+                })
+                .add("bouncy-castle", new Runnable() {
+                    @Override
+                    public void run() {
+                        MainModel.integrateBouncyCastle();
+                    }
+                })
+                .add("injector", new Runnable() {
+                    @Override
+                    public void run() {
+                        appInjector = Guice.createInjector(new AppModule());
+                        model = appInjector.getInstance(MainModel.class);
+                    }
+                })
+                .add("config-read", new Runnable() {
+                    @Override
+                    public void run() {
+                        model.readConfigs();
+                    }
+                }, "injector")
+                .add("derive-key", new Runnable() {
+                    @Override
+                    public void run() {
+                        model.deriveKey();
+                    }
+                }, "bouncy-castle", "config-read")
+                .add("model", new Runnable() {
+                    @Override
+                    public void run() {
+                        model.prepareBootstrap();
+                    }
+                }, "bouncy-castle", "config-read", "derive-key")
+                .add("window", new Runnable() {
+                    @Override
+                    public void run() {
+                        runOnEdt(new Runnable() {
+                            @Override
+                            public void run() {
+                                window = appInjector.getInstance(MainWindow.class);
+                            }
+                        });
+                    }
+                }, "look-and-feel", "injector")
+                .add("show", new Runnable() {
+                    @Override
+                    public void run() {
+                        model.completeBootstrap();
+                        runOnEdt(new Runnable() {
+                            @Override
+                            public void run() {
+                                window.setVisible(true);
+                            }
+                        });
+                    }
+                }, "model", "window");
 
-        Injector appInjector = Guice.createInjector(new AppModule());
-        window = appInjector.getInstance(MainWindow.class);
-        model = appInjector.getInstance(MainModel.class);
-        model.bootstrap();
+        try {
+            bootstrap.run();
+        } finally {
+            bootstrapExecutor.shutdown();
+            LOG.log(INFO, "Bootstrap durations in ms: {0}", bootstrap.getDurationsInMillis());
+        }
 
-        window.setVisible(true);
+        if (Boolean.getBoolean(EXIT_AFTER_STARTUP_PROPERTY)) {
+            LOG.info("Exiting after startup as requested.");
+            System.exit(0);
+        }
+    }
+
+    private static void runOnEdt(Runnable runnable) {
+        try {
+            SwingUtilities.invokeAndWait(runnable);
+        } catch (InvocationTargetException ex) {
+            throw new IllegalStateException("Could not run on the event dispatch thread: " + ex.getCause().getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the event dispatch thread.");
+        }
     }
 
     private static void setNativeLookAndFeel() {
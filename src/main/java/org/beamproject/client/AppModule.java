@@ -20,7 +20,6 @@ package org.beamproject.client;
 
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.SubscriberExceptionContext;
-import com.google.common.eventbus.SubscriberExceptionHandler;
 import com.google.inject.AbstractModule;
 import com.google.inject.MembersInjector;
 import com.google.inject.Provides;
@@ -29,7 +28,9 @@ import com.google.inject.TypeLiteral;
 import com.google.inject.matcher.Matchers;
 import com.google.inject.spi.TypeEncounter;
 import com.google.inject.spi.TypeListener;
+import java.io.File;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.util.Properties;
 import static java.util.logging.Level.WARNING;
 import java.util.logging.Logger;
@@ -38,6 +39,11 @@ import org.beamproject.client.model.ChatModel;
 import org.beamproject.client.model.MainModel;
 import org.beamproject.client.model.MenuModel;
 import org.beamproject.client.model.WizardModel;
+import org.beamproject.client.storage.ChatHistory;
+import org.beamproject.client.storage.ContactStore;
+import org.beamproject.client.storage.ConversationIndex;
+import org.beamproject.client.storage.HistoryLog;
+import org.beamproject.client.storage.SearchIndex;
 import org.beamproject.client.util.ClipboardAccess;
 import org.beamproject.client.util.ConfigKey;
 import org.beamproject.client.view.AddContactLayer;
@@ -91,13 +97,21 @@ public class AppModule extends AbstractModule {
     @Provides
     @Singleton
     EventBus providesEventBus() {
-        return new EventBus(new SubscriberExceptionHandler() {
+        return new EventDispatcher(new EventExceptionHandler() {
             @Override
             public void handleException(Throwable exception, SubscriberExceptionContext context) {
                 log.log(WARNING, "EventBus exception occurred: {0}", context.getSubscriber().toString());
                 log.log(WARNING, "Method: {0}", context.getSubscriberMethod().toString());
                 log.log(WARNING, readStacktrace(exception));
             }
+
+            @Override
+            public void handleException(Throwable exception, Event event, Object subscriber, Method subscriberMethod) {
+                log.log(WARNING, "EventBus exception occurred: {0}", subscriber.toString());
+                log.log(WARNING, "Method: {0}", subscriberMethod.toString());
+                log.log(WARNING, "Event: {0}", event);
+                log.log(WARNING, readStacktrace(exception));
+            }
         });
     }
 
@@ -132,6 +146,21 @@ public class AppModule extends AbstractModule {
         return new CryptoPackerPool(factory);
     }
 
+    @Provides
+    @Singleton
+    ContactStore providesContactStore() {
+        return new ContactStore(new File(App.CONTACTS_PATH));
+    }
+
+    @Provides
+    @Singleton
+    ChatHistory providesChatHistory() {
+        File directory = new File(App.HISTORY_DIRECTORY_PATH);
+        return new ChatHistory(new HistoryLog(directory),
+                new ConversationIndex(new File(directory, "index")),
+                new SearchIndex(new File(directory, "search")));
+    }
+
     private class LogTypeListener implements TypeListener {
 
         @Override
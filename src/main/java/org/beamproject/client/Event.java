@@ -12,6 +12,7 @@ import org.beamproject.client.view.UnlockLayer;
 import org.beamproject.client.view.wizard.AddressLayer;
 import org.beamproject.client.view.wizard.PasswordLayer;
 import org.beamproject.client.view.wizard.WelcomeLayer;
+import org.beamproject.common.Server;
 import org.beamproject.common.crypto.EncryptedConfig;
 
 /**
@@ -86,6 +87,12 @@ public enum Event {
      * {@link AddContactLayer}.
      */
     SHOW_ADD_CONTACT_LAYER,
+    /**
+     * This event is sent by the {@link MainModel} when the {@link Server} and
+     * with it the Beam address of the user changed without a restart of the
+     * application.
+     */
+    USER_ADDRESS_CHANGED,
     /**
      * This event is sent by the {@link MainModel} in order to dispose all
      * frames.
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client;
+
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.DeadEvent;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import java.awt.Component;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.swing.SwingUtilities;
+
+/**
+ * An {@link EventBus} that routes every {@link Event} only to the subscribers
+ * interested in it. Which subscribers these are is computed once during
+ * {@link #register(Object)} and kept in an {@link EnumMap}, so posting an
+ * {@link Event} does not call every {@link Subscribe}d method.
+ * <p>
+ * A subscriber declares its events with {@link Handles}. All other objects are
+ * posted as by a plain {@link EventBus}.
+ * <p>
+ * Subscribers that are {@link Component}s receive their {@link Event}s on the
+ * Event Dispatch Thread, in the order they have been posted. When an
+ * {@link Event} is posted from another thread, it is handed over with
+ * {@link SwingUtilities#invokeLater(Runnable)}; while it waits there, posting
+ * the same {@link Event} again moves it behind the events posted in between
+ * instead of delivering it twice. So a burst of, for example,
+ * {@link Event#UPDATE_CONNECTION_STATUS} results in only one update of the
+ * view, and the view still ends up in the state of the last posted event.
+ */
+public class EventDispatcher extends EventBus {
+
+    private final EventExceptionHandler exceptionHandler;
+    private final EnumMap<Event, List<Handler>> handlers = new EnumMap<>(Event.class);
+    private final ThreadLocal<Queue<Event>> queuedEvents = new ThreadLocal<Queue<Event>>() {
+        @Override
+        protected Queue<Event> initialValue() {
+            return new ArrayDeque<>();
+        }
+    };
+    private final ThreadLocal<Boolean> isDispatching = new ThreadLocal<Boolean>() {
+        @Override
+        protected Boolean initialValue() {
+            return false;
+        }
+    };
+
+    /**
+     * @param exceptionHandler Handles the exceptions of all subscribers.
+     */
+    public EventDispatcher(EventExceptionHandler exceptionHandler) {
+        super(exceptionHandler);
+        this.exceptionHandler = exceptionHandler;
+
+        for (Event event : Event.values()) {
+            handlers.put(event, new CopyOnWriteArrayList<Handler>());
+        }
+    }
+
+    @Override
+    public void register(Object subscriber) {
+        super.register(subscriber);
+
+        for (Method method : subscriber.getClass().getMethods()) {
+            if (isEventSubscriber(method)) {
+                Handler handler = new Handler(subscriber, method);
+
+                for (Event event : readHandledEvents(method)) {
+                    handlers.get(event).add(handler);
+                }
+            }
+        }
+    }
+
+    private boolean isEventSubscriber(Method method) {
+        return method.isAnnotationPresent(Subscribe.class)
+                && method.getParameterTypes().length == 1
+                && method.getParameterTypes()[0].isAssignableFrom(Event.class);
+    }
+
+    private Event[] readHandledEvents(Method method) {
+        Handles handles = method.getAnnotation(Handles.class);
+        return handles != null ? handles.value() : Event.values();
+    }
+
+    @Override
+    public void unregister(Object subscriber) {
+        super.unregister(subscriber);
+
+        for (List<Handler> eventHandlers : handlers.values()) {
+            for (Handler handler : eventHandlers) {
+                if (handler.subscriber == subscriber) {
+                    eventHandlers.remove(handler);
+                }
+            }
+        }
+    }
+
+    /**
+     * Posts the given object. {@link Event}s are delivered to their handlers
+     * only; events posted while handling another one are queued and delivered
+     * afterwards, in the order they have been posted.
+     *
+     * @param event The event to post.
+     */
+    @Override
+    public void post(Object event) {
+        if (!(event instanceof Event)) {
+            super.post(event);
+            return;
+        }
+
+        queuedEvents.get().add((Event) event);
+
+        if (isDispatching.get()) {
+            return;
+        }
+
+        isDispatching.set(true);
+
+        try {
+            Event nextEvent;
+
+            while ((nextEvent = queuedEvents.get().poll()) != null) {
+                dispatch(nextEvent);
+            }
+        } finally {
+            isDispatching.remove();
+            queuedEvents.remove();
+        }
+    }
+
+    private void dispatch(Event event) {
+        List<Handler> eventHandlers = handlers.get(event);
+
+        if (eventHandlers.isEmpty()) {
+            super.post(new DeadEvent(this, event));
+            return;
+        }
+
+        for (Handler handler : eventHandlers) {
+            handler.handle(event);
+        }
+    }
+
+    private class Handler {
+
+        private final Object subscriber;
+        private final Method method;
+        private final boolean isThreadSafe;
+        private final boolean isView;
+        private final Set<Event> pendingEvents = new LinkedHashSet<>();
+        private boolean isDeliveryScheduled = false;
+
+        Handler(Object subscriber, Method method) {
+            this.subscriber = subscriber;
+            this.method = method;
+            this.isThreadSafe = method.isAnnotationPresent(AllowConcurrentEvents.class);
+            this.isView = subscriber instanceof Component;
+            method.setAccessible(true);
+        }
+
+        void handle(Event event) {
+            if (!isView) {
+                handleNow(event);
+            } else if (SwingUtilities.isEventDispatchThread()) {
+                removePending(event);
+                handlePending(); // They have been posted before.
+                handleNow(event);
+            } else {
+                addPending(event);
+            }
+        }
+
+        /**
+         * Queues the given event for the Event Dispatch Thread. If it is
+         * already pending, it is moved to the end, so the handler ends up in
+         * the state of the last posted event.
+         */
+        private void addPending(Event event) {
+            boolean isDeliveryNeeded;
+
+            synchronized (pendingEvents) {
+                pendingEvents.remove(event);
+                pendingEvents.add(event);
+                isDeliveryNeeded = !isDeliveryScheduled;
+                isDeliveryScheduled = true;
+            }
+
+            if (isDeliveryNeeded) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        handlePending();
+                    }
+                });
+            }
+        }
+
+        private void removePending(Event event) {
+            synchronized (pendingEvents) {
+                pendingEvents.remove(event);
+            }
+        }
+
+        private void handlePending() {
+            Event event;
+
+            while ((event = pollPending()) != null) {
+                handleNow(event);
+            }
+        }
+
+        private Event pollPending() {
+            synchronized (pendingEvents) {
+                Iterator<Event> iterator = pendingEvents.iterator();
+
+                if (!iterator.hasNext()) {
+                    isDeliveryScheduled = false;
+                    return null;
+                }
+
+                Event event = iterator.next();
+                iterator.remove();
+                return event;
+            }
+        }
+
+        private void handleNow(Event event) {
+            if (isThreadSafe) {
+                invoke(event);
+            } else {
+                synchronized (this) {
+                    invoke(event);
+                }
+            }
+        }
+
+        private void invoke(Event event) {
+            try {
+                method.invoke(subscriber, event);
+            } catch (InvocationTargetException ex) {
+                exceptionHandler.handleException(ex.getCause(), event, subscriber, method);
+            } catch (IllegalAccessException ex) {
+                throw new IllegalStateException("Subscriber method is not accessible: " + method, ex);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client;
+
+import com.google.common.eventbus.SubscriberExceptionHandler;
+import java.lang.reflect.Method;
+
+/**
+ * Handles the exceptions thrown by subscribers of the {@link EventDispatcher}:
+ * those of {@link Event} handlers as well as those of subscribers of other
+ * objects.
+ */
+public interface EventExceptionHandler extends SubscriberExceptionHandler {
+
+    /**
+     * Handles an exception thrown by a handler of an {@link Event}.
+     *
+     * @param exception The thrown exception.
+     * @param event The event being handled.
+     * @param subscriber The subscriber that threw the exception.
+     * @param subscriberMethod The method that threw the exception.
+     */
+    void handleException(Throwable exception, Event event, Object subscriber, Method subscriberMethod);
+
+}
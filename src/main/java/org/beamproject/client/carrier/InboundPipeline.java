@@ -0,0 +1,429 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.carrier;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import static java.util.logging.Level.WARNING;
+import java.util.logging.Logger;
+import org.beamproject.common.crypto.CryptoPacker;
+import org.beamproject.common.crypto.CryptoPackerPool;
+import org.beamproject.common.message.Message;
+import org.beamproject.common.util.Executor;
+import org.beamproject.common.util.Task;
+
+/**
+ * A bounded stage between the MQTT carrier and the message handling. Incoming
+ * ciphertexts are queued and decrypted by a fixed number of workers in
+ * parallel, each borrowing one {@link CryptoPacker} from the
+ * {@link CryptoPackerPool} per run. If none can be borrowed, a worker is
+ * started again after a short delay.
+ * <p>
+ * The sender of a message is only known after its decryption. So the decrypted
+ * messages are first put back into the order they were received in, then
+ * handled in that order per sender, as told by the {@link Consumer}. Messages of
+ * different senders are handled in parallel.
+ * <p>
+ * The capacity bounds the messages that are queued, being decrypted or waiting
+ * to be handled. When the capacity is reached, the configured
+ * {@link OverflowPolicy} decides which message is dropped. The queue depth and
+ * the number of dropped messages can be read at any time.
+ */
+public class InboundPipeline {
+
+    /**
+     * Decides what happens with a message when the capacity is reached.
+     */
+    public enum OverflowPolicy {
+
+        /**
+         * Drop the message that was just received.
+         */
+        DROP_NEWEST,
+        /**
+         * Drop the oldest message that is not being decrypted yet to make room
+         * for the new one. If there is none, the new message is dropped.
+         */
+        DROP_OLDEST
+    }
+
+    /**
+     * Decrypts and handles the queued ciphertexts.
+     */
+    public interface Consumer {
+
+        /**
+         * Decrypts the given ciphertext with the borrowed {@link CryptoPacker}.
+         * This is called by several workers in parallel.
+         *
+         * @param packer The borrowed packer.
+         * @param ciphertext The received ciphertext.
+         * @return The message, or null if it should be dropped.
+         */
+        Message decrypt(CryptoPacker packer, byte[] ciphertext);
+
+        /**
+         * @param message The decrypted message.
+         * @return The key of the sender, for example the fingerprint of its
+         * public key. The messages of one key are handled in the order they
+         * were received. May be null for messages without a sender.
+         */
+        String readSenderKey(Message message);
+
+        /**
+         * Handles the given message. The messages of one sender are never
+         * handled concurrently.
+         *
+         * @param message The decrypted message.
+         */
+        void handle(Message message);
+    }
+
+    final static long BORROW_RETRY_DELAY_MILLIS = 100;
+    private final static Logger LOG = Logger.getLogger(InboundPipeline.class.getName());
+    private final static String NO_SENDER = "";
+    private final Executor executor;
+    private final ScheduledExecutorService scheduler;
+    private final CryptoPackerPool packerPool;
+    private final Consumer consumer;
+    private final OverflowPolicy policy;
+    private final int capacity;
+    private final int workerCount;
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingMessages = new AtomicInteger();
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final AtomicBoolean isBorrowRetryScheduled = new AtomicBoolean();
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final Object offerLock = new Object();
+    private long nextSequence = 0;
+    private final Object handoffLock = new Object();
+    private final Map<Long, Message> decryptedMessages = new HashMap<>();
+    private long nextSequenceToRelease = 0;
+    private final Map<String, Lane> lanes = new HashMap<>();
+
+    /**
+     * Creates a new pipeline.
+     *
+     * @param executor The executor running the workers.
+     * @param packerPool The pool to borrow {@link CryptoPacker}s from.
+     * @param consumer The consumer decrypting and handling the ciphertexts.
+     * @param capacity The number of messages that may be pending in total.
+     * @param workerCount The maximal number of workers running in parallel.
+     * @param policy The policy used when the capacity is reached.
+     */
+    public InboundPipeline(Executor executor, CryptoPackerPool packerPool, Consumer consumer,
+            int capacity, int workerCount, OverflowPolicy policy) {
+        this(executor, Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("inbound-retry-%d").setDaemon(true).build()),
+                packerPool, consumer, capacity, workerCount, policy);
+    }
+
+    InboundPipeline(Executor executor, ScheduledExecutorService scheduler, CryptoPackerPool packerPool,
+            Consumer consumer, int capacity, int workerCount, OverflowPolicy policy) {
+        if (capacity < 1 || workerCount < 1) {
+            throw new IllegalArgumentException("The capacity and the number of workers have to be positive.");
+        }
+
+        this.executor = executor;
+        this.scheduler = scheduler;
+        this.packerPool = packerPool;
+        this.consumer = consumer;
+        this.policy = policy;
+        this.capacity = capacity;
+        this.workerCount = workerCount;
+    }
+
+    /**
+     * Queues the given ciphertext and starts another worker if needed.
+     *
+     * @param ciphertext The received ciphertext.
+     * @param username The username, as delivered by the carrier. It is not
+     * used for ordering, since the carrier delivers the same one for all
+     * senders.
+     * @return true if the given ciphertext has been queued, false if it has
+     * been dropped.
+     */
+    public boolean offer(byte[] ciphertext, String username) {
+        List<Lane> claimedLanes = new ArrayList<>();
+        boolean isAccepted;
+
+        synchronized (offerLock) {
+            isAccepted = enqueue(ciphertext, claimedLanes);
+        }
+
+        for (final Lane lane : claimedLanes) { // Released by dropping the oldest.
+            executor.runAsync(new Task() {
+                @Override
+                public void run() {
+                    handle(lane);
+                }
+            });
+        }
+
+        startWorkerIfNeeded();
+        return isAccepted;
+    }
+
+    private boolean enqueue(byte[] ciphertext, List<Lane> claimedLanes) {
+        while (!reserveSlot()) {
+            Entry oldest = policy == OverflowPolicy.DROP_OLDEST ? queue.poll() : null;
+            droppedMessages.incrementAndGet();
+
+            if (oldest == null) {
+                return false;
+            }
+
+            claimedLanes.addAll(release(oldest.sequence, null));
+        }
+
+        queue.add(new Entry(nextSequence++, ciphertext));
+        return true;
+    }
+
+    private boolean reserveSlot() {
+        int pending;
+
+        do {
+            pending = pendingMessages.get();
+
+            if (pending >= capacity) {
+                return false;
+            }
+        } while (!pendingMessages.compareAndSet(pending, pending + 1));
+
+        return true;
+    }
+
+    /**
+     * Starts one more worker if entries are queued and fewer than the maximal
+     * number of workers are running. Since this is done for every queued
+     * entry, the number of workers grows with the queue.
+     */
+    private void startWorkerIfNeeded() {
+        int active;
+
+        do {
+            active = activeWorkers.get();
+
+            if (queue.isEmpty() || isBorrowRetryScheduled.get() || active >= workerCount) {
+                return;
+            }
+        } while (!activeWorkers.compareAndSet(active, active + 1));
+
+        executor.runAsync(new Task() {
+            @Override
+            public void run() {
+                work();
+            }
+        });
+    }
+
+    private void work() {
+        CryptoPacker packer;
+
+        try {
+            packer = packerPool.borrowObject();
+        } catch (Exception ex) {
+            activeWorkers.decrementAndGet();
+            LOG.log(WARNING, "Could not borrow a packer, retrying in {0} ms: {1}",
+                    new Object[]{BORROW_RETRY_DELAY_MILLIS, ex.getMessage()});
+            scheduleBorrowRetry();
+            return;
+        }
+
+        try {
+            decryptQueued(packer);
+        } finally {
+            packerPool.returnObject(packer);
+            activeWorkers.decrementAndGet();
+        }
+
+        startWorkerIfNeeded(); // Catches entries queued while stopping.
+    }
+
+    /**
+     * Starts a worker again after a delay. Meanwhile, no worker is started, so
+     * that no thread is kept busy and the queued entries are kept.
+     */
+    private void scheduleBorrowRetry() {
+        if (isBorrowRetryScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    isBorrowRetryScheduled.set(false);
+                    startWorkerIfNeeded();
+                }
+            }, BORROW_RETRY_DELAY_MILLIS, MILLISECONDS);
+        }
+    }
+
+    private void decryptQueued(CryptoPacker packer) {
+        Entry entry;
+
+        while ((entry = queue.poll()) != null) {
+            for (Lane lane : release(entry.sequence, decrypt(packer, entry.ciphertext))) {
+                handle(lane);
+            }
+        }
+    }
+
+    private Message decrypt(CryptoPacker packer, byte[] ciphertext) {
+        try {
+            return consumer.decrypt(packer, ciphertext);
+        } catch (RuntimeException ex) {
+            LOG.log(WARNING, "Could not decrypt message: {0}", ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Hands the given message over to the lane of its sender once all messages
+     * received before are handed over as well.
+     *
+     * @param sequence The number of the message in the order of reception.
+     * @param message The decrypted message, or null if it has been dropped.
+     * @return The lanes that received messages and are not handled yet. The
+     * caller has to handle them.
+     */
+    private List<Lane> release(long sequence, Message message) {
+        List<Lane> claimedLanes = new ArrayList<>();
+
+        synchronized (handoffLock) {
+            decryptedMessages.put(sequence, message);
+
+            while (decryptedMessages.containsKey(nextSequenceToRelease)) {
+                Message nextMessage = decryptedMessages.remove(nextSequenceToRelease++);
+
+                if (nextMessage == null) {
+                    pendingMessages.decrementAndGet();
+                    continue;
+                }
+
+                Lane lane = getLane(readSenderKey(nextMessage));
+                lane.messages.add(nextMessage);
+
+                if (!lane.isHandled) {
+                    lane.isHandled = true;
+                    claimedLanes.add(lane);
+                }
+            }
+        }
+
+        return claimedLanes;
+    }
+
+    private String readSenderKey(Message message) {
+        try {
+            String key = consumer.readSenderKey(message);
+            return key == null ? NO_SENDER : key;
+        } catch (RuntimeException ex) {
+            LOG.log(WARNING, "Could not read the sender of a message: {0}", ex.getMessage());
+            return NO_SENDER;
+        }
+    }
+
+    private Lane getLane(String senderKey) {
+        Lane lane = lanes.get(senderKey);
+
+        if (lane == null) {
+            lane = new Lane(senderKey);
+            lanes.put(senderKey, lane);
+        }
+
+        return lane;
+    }
+
+    private void handle(Lane lane) {
+        while (true) {
+            Message message;
+
+            synchronized (handoffLock) {
+                message = lane.messages.poll();
+
+                if (message == null) {
+                    lane.isHandled = false;
+                    lanes.remove(lane.senderKey);
+                    return;
+                }
+            }
+
+            try {
+                consumer.handle(message);
+            } catch (RuntimeException ex) {
+                LOG.log(WARNING, "Could not handle message: {0}", ex.getMessage());
+            } finally {
+                pendingMessages.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return The number of messages currently waiting to be decrypted or
+     * handled.
+     */
+    public int getQueueDepth() {
+        return pendingMessages.get();
+    }
+
+    /**
+     * @return The number of messages dropped since this pipeline was created.
+     */
+    public long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    private static class Entry {
+
+        private final long sequence;
+        private final byte[] ciphertext;
+
+        Entry(long sequence, byte[] ciphertext) {
+            this.sequence = sequence;
+            this.ciphertext = ciphertext;
+        }
+    }
+
+    /**
+     * The decrypted messages of one sender, waiting to be handled. A lane is
+     * handled by at most one worker at a time.
+     */
+    private static class Lane {
+
+        private final String senderKey;
+        private final Queue<Message> messages = new LinkedList<>();
+        private boolean isHandled = false;
+
+        Lane(String senderKey) {
+            this.senderKey = senderKey;
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.carrier;
+
+import java.util.EnumMap;
+import org.beamproject.common.message.Field.Cnt.TypeValue;
+import org.beamproject.common.message.Message;
+import org.beamproject.common.message.MessageHandler;
+
+/**
+ * Maps message types to the {@link MessageHandler}s responsible for them. The
+ * handlers, including their validators, are created once and reused for every
+ * message of their type.
+ * <p>
+ * Since a {@link MessageHandler} keeps the currently handled message as state,
+ * one handler never handles two messages at the same time. Handlers of
+ * different types run in parallel.
+ */
+public class MessageHandlerRegistry {
+
+    private volatile EnumMap<TypeValue, MessageHandler> handlers = new EnumMap<>(TypeValue.class);
+
+    /**
+     * Registers the given handler for messages of the given type. A previously
+     * registered handler of the same type is replaced.
+     *
+     * @param type The message type.
+     * @param handler The handler to use for this type.
+     */
+    public synchronized void register(TypeValue type, MessageHandler handler) {
+        EnumMap<TypeValue, MessageHandler> copy = new EnumMap<>(handlers);
+        copy.put(type, handler);
+        handlers = copy;
+    }
+
+    /**
+     * @param type The message type.
+     * @return true if a handler is registered for the given type.
+     */
+    public boolean isRegistered(TypeValue type) {
+        return handlers.containsKey(type);
+    }
+
+    /**
+     * Handles the given message with the handler registered for its type.
+     *
+     * @param message The message to handle.
+     * @return The response, or null if no handler is registered for the type
+     * or the handler has no response.
+     */
+    public Message handle(Message message) {
+        MessageHandler handler = handlers.get(message.getType());
+
+        if (handler == null) {
+            return null;
+        }
+
+        synchronized (handler) {
+            return handler.handle(message);
+        }
+    }
+
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.carrier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.beamproject.common.crypto.CryptoPacker;
+import org.beamproject.common.crypto.CryptoPackerPool;
+import org.beamproject.common.message.Message;
+import org.beamproject.common.util.Executor;
+import org.beamproject.common.util.Task;
+
+/**
+ * Collects outgoing messages and encrypts and delivers them in batches. A
+ * batch is started after the configured linger time, so that messages sent in
+ * a burst end up in the same batch. Every batch borrows exactly one
+ * {@link CryptoPacker} from the {@link CryptoPackerPool}.
+ * <p>
+ * Messages are delivered in the order they have been queued.
+ */
+public class OutboundBatcher {
+
+    /**
+     * Receives the encrypted messages of a batch.
+     */
+    public interface Sender {
+
+        /**
+         * Delivers one encrypted message.
+         *
+         * @param ciphertext The encrypted message.
+         * @param topic The topic to publish to.
+         */
+        void deliver(byte[] ciphertext, String topic);
+
+        /**
+         * Called when a message could not be encrypted or delivered.
+         *
+         * @param message The message that got lost.
+         * @param exception The reason.
+         */
+        void fail(Message message, Exception exception);
+    }
+
+    private final Executor executor;
+    private final CryptoPackerPool packerPool;
+    private final Sender sender;
+    private final long lingerMillis;
+    private final int maximalBatchSize;
+    private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean isDraining = new AtomicBoolean();
+
+    /**
+     * Creates a new batcher.
+     *
+     * @param executor The executor running the batches.
+     * @param packerPool The pool to borrow {@link CryptoPacker}s from.
+     * @param sender The sender of the encrypted messages.
+     * @param lingerMillis How long to wait for further messages before a
+     * batch is started.
+     * @param maximalBatchSize The maximal number of messages per packer
+     * borrow.
+     */
+    public OutboundBatcher(Executor executor, CryptoPackerPool packerPool, Sender sender,
+            long lingerMillis, int maximalBatchSize) {
+        if (lingerMillis < 0 || maximalBatchSize < 1) {
+            throw new IllegalArgumentException("The linger time may not be negative and the batch size has to be positive.");
+        }
+
+        this.executor = executor;
+        this.packerPool = packerPool;
+        this.sender = sender;
+        this.lingerMillis = lingerMillis;
+        this.maximalBatchSize = maximalBatchSize;
+    }
+
+    /**
+     * Queues the given message for encryption and delivery.
+     *
+     * @param message The message to send.
+     * @param topic The topic to publish to.
+     */
+    public void enqueue(Message message, String topic) {
+        queue.add(new Entry(message, topic));
+        startDrainingIfNeeded();
+    }
+
+    private void startDrainingIfNeeded() {
+        if (!queue.isEmpty() && isDraining.compareAndSet(false, true)) {
+            executor.runAsync(new Task() {
+                @Override
+                public void run() {
+                    drain();
+                }
+            });
+        }
+    }
+
+    private void drain() {
+        try {
+            linger();
+
+            while (!queue.isEmpty()) {
+                sendBatch(pollBatch());
+            }
+        } finally {
+            isDraining.set(false);
+        }
+
+        startDrainingIfNeeded(); // Catches entries queued while stopping.
+    }
+
+    private void linger() {
+        if (lingerMillis == 0) {
+            return;
+        }
+
+        try {
+            Thread.sleep(lingerMillis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<Entry> pollBatch() {
+        List<Entry> batch = new ArrayList<>(maximalBatchSize);
+        Entry entry;
+
+        while (batch.size() < maximalBatchSize && (entry = queue.poll()) != null) {
+            batch.add(entry);
+        }
+
+        return batch;
+    }
+
+    private void sendBatch(List<Entry> batch) {
+        CryptoPacker packer;
+
+        try {
+            packer = packerPool.borrowObject();
+        } catch (Exception ex) {
+            for (Entry entry : batch) {
+                sender.fail(entry.message, ex);
+            }
+            return;
+        }
+
+        try {
+            for (Entry entry : batch) {
+                sendWithPacker(packer, entry);
+            }
+        } finally {
+            packerPool.returnObject(packer);
+        }
+    }
+
+    private void sendWithPacker(CryptoPacker packer, Entry entry) {
+        try {
+            byte[] ciphertext = packer.packAndEncrypt(entry.message);
+            sender.deliver(ciphertext, entry.topic);
+        } catch (Exception ex) {
+            sender.fail(entry.message, ex);
+        }
+    }
+
+    /**
+     * @return The number of messages waiting to be sent.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private static class Entry {
+
+        private final Message message;
+        private final String topic;
+
+        Entry(Message message, String topic) {
+            this.message = message;
+            this.topic = topic;
+        }
+    }
+
+}
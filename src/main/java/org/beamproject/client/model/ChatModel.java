@@ -24,6 +24,7 @@ import com.google.inject.Singleton;
 import lombok.experimental.Delegate;
 import static org.beamproject.client.Event.SHOW_ADD_CONTACT_LAYER;
 import static org.beamproject.client.Event.SHOW_MAIN_WINDOW;
+import org.beamproject.client.storage.ContactStore;
 import org.beamproject.common.User;
 
 /**
@@ -47,12 +48,14 @@ public class ChatModel {
     }
 
     /**
-     * Adds the {@link User} of the given user address to the contact list.
+     * Adds the {@link User} of the given user address to the contact list and
+     * stores it in the {@link ContactStore}.
      *
      * @param userAddress The Beam address of the user to add.
      */
     public void addContact(String userAddress) {
-        User user = new User(userAddress);
+        User contact = new User(userAddress);
+        mainModel.getContactStore().add(contact);
         bus.post(SHOW_MAIN_WINDOW);
     }
 
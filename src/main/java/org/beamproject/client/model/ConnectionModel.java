@@ -29,6 +29,14 @@ import lombok.Setter;
 import lombok.experimental.Delegate;
 import static org.beamproject.client.Event.UPDATE_CONNECTION_STATUS;
 import org.beamproject.client.carrier.HandshakeResponseHandler;
+import org.beamproject.client.carrier.InboundPipeline;
+import static org.beamproject.client.carrier.InboundPipeline.OverflowPolicy.DROP_NEWEST;
+import org.beamproject.client.carrier.MessageHandlerRegistry;
+import org.beamproject.client.carrier.OutboundBatcher;
+import org.beamproject.client.model.MainModel.AcceptedSender;
+import org.beamproject.client.util.ConfigKey;
+import static org.beamproject.client.util.ConfigKey.ACCEPTED_MESSAGE_SENDER;
+import org.beamproject.common.Server;
 import org.beamproject.common.Session;
 import org.beamproject.common.carrier.ClientCarrier;
 import static org.beamproject.common.carrier.ClientCarrier.MQTT_IN_TOPIC_PREFIX;
@@ -39,7 +47,9 @@ import org.beamproject.common.carrier.MqttConnectionPool;
 import org.beamproject.common.carrier.MqttConnectionPoolFactory;
 import org.beamproject.common.crypto.CryptoPacker;
 import org.beamproject.common.crypto.CryptoPackerPool;
+import org.beamproject.common.crypto.EncryptedConfig;
 import org.beamproject.common.crypto.HandshakeChallenger;
+import static org.beamproject.common.message.Field.Cnt.TypeValue.HS_RESPONSE;
 import org.beamproject.common.message.Message;
 import org.beamproject.common.util.Executor;
 import org.beamproject.common.util.Task;
@@ -49,47 +59,150 @@ public class ConnectionModel implements ClientCarrierModel {
     @Inject
     Logger log;
     final static int MQTT_USERNAME_LENGTH = 12;
+    final static int INBOUND_QUEUE_CAPACITY = 1024;
+    final static int INBOUND_WORKERS = Runtime.getRuntime().availableProcessors();
+    final static long OUTBOUND_LINGER_MILLIS = 5;
+    final static int OUTBOUND_MAXIMAL_BATCH_SIZE = 32;
+    final static long RECONNECT_INITIAL_DELAY_MILLIS = 1000;
+    final static long RECONNECT_MAXIMAL_DELAY_MILLIS = 60 * 1000;
     private final static String MQTT_USERNAME_ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
     private final MainModel model;
     private final EventBus bus;
     private final Executor executor;
-    private final CryptoPackerPool packerPool;
+    private final InboundPipeline inboundPipeline;
+    private final OutboundBatcher outboundBatcher;
+    private final MessageHandlerRegistry handlers = new MessageHandlerRegistry();
+    private final ReconnectSupervisor reconnectSupervisor;
+    private final SenderFilter senderFilter = new SenderFilter(HS_RESPONSE);
+    private final Object connectionLock = new Object();
+    volatile boolean isConnectionWanted = false;
     @Delegate
     ClientCarrier carrier;
-    MqttConnectionPool connectionPool;
-    String mqttUsername, subscriberTopic, publisherTopic;
+    volatile MqttConnectionPool connectionPool;
+    volatile String mqttUsername, subscriberTopic, publisherTopic;
     @Getter
     @Setter
     private HandshakeChallenger challenger;
     @Getter
     @Setter
-    private Session session;
+    private volatile Session session;
 
     @Inject
     public ConnectionModel(MainModel model, EventBus bus, Executor executor, CryptoPackerPool packerPool) {
         this.model = model;
         this.bus = bus;
         this.executor = executor;
-        this.packerPool = packerPool;
+        this.inboundPipeline = new InboundPipeline(executor, packerPool, new InboundPipeline.Consumer() {
+            @Override
+            public Message decrypt(CryptoPacker packer, byte[] ciphertext) {
+                return decryptAndFilter(packer, ciphertext);
+            }
+
+            @Override
+            public String readSenderKey(Message message) {
+                return SenderFilter.readSenderFingerprint(message);
+            }
+
+            @Override
+            public void handle(Message message) {
+                handleRequest(message);
+            }
+        }, INBOUND_QUEUE_CAPACITY, INBOUND_WORKERS, DROP_NEWEST);
+        this.outboundBatcher = new OutboundBatcher(executor, packerPool, new OutboundBatcher.Sender() {
+            @Override
+            public void deliver(byte[] ciphertext, String topic) {
+                carrier.deliverMessage(ciphertext, topic);
+            }
+
+            @Override
+            public void fail(Message message, Exception exception) {
+                log.log(WARNING, "Could not send message: {0}", exception.getMessage());
+            }
+        }, OUTBOUND_LINGER_MILLIS, OUTBOUND_MAXIMAL_BATCH_SIZE);
+
+        this.reconnectSupervisor = new ReconnectSupervisor(executor, new ReconnectSupervisor.Connector() {
+            @Override
+            public boolean reconnect() {
+                return ConnectionModel.this.reconnect();
+            }
+        }, RECONNECT_INITIAL_DELAY_MILLIS, RECONNECT_MAXIMAL_DELAY_MILLIS);
+
+        handlers.register(HS_RESPONSE, new HandshakeResponseHandler(this));
+    }
+
+    /**
+     * Connects to the {@link Server} and starts the handshake. From now on,
+     * a lost connection is re-established in the background until
+     * {@link #disconnect()} is called.
+     */
+    public void connect() {
+        synchronized (connectionLock) {
+            isConnectionWanted = true;
+        }
+
+        senderFilter.setContactStore(model.getContactStore());
+        senderFilter.setAcceptedSender(readAcceptedSender());
+        prepareConnectionPoolAndCarrier();
+        startAsyncReceiving();
+        startHandshake();
+    }
+
+    private AcceptedSender readAcceptedSender() {
+        EncryptedConfig<ConfigKey> encryptedConfig = model.getEncryptedConfig();
+
+        if (encryptedConfig == null || !encryptedConfig.contains(ACCEPTED_MESSAGE_SENDER)) {
+            return AcceptedSender.CONTACTS;
+        }
+
+        return AcceptedSender.valueOf(encryptedConfig.getAsString(ACCEPTED_MESSAGE_SENDER));
+    }
+
+    /**
+     * Sets from whom received messages are handled. Messages of other senders
+     * are dropped right after decryption.
+     *
+     * @param acceptedSender The accepted senders.
+     */
+    public void setAcceptedSender(AcceptedSender acceptedSender) {
+        senderFilter.setAcceptedSender(acceptedSender);
     }
 
     public void prepareConnectionPoolAndCarrier() {
+        CarrierSetup setup = createCarrier();
+
+        synchronized (connectionLock) {
+            use(setup);
+        }
+    }
+
+    private CarrierSetup createCarrier() {
         String host = model.getServer().getMqttAddress().getHostString();
         int port = model.getServer().getMqttAddress().getPort();
+        String newMqttUsername = generateRandomMqttUsername();
+        String newSubscriberTopic = MQTT_OUT_TOPIC_PREFIX + newMqttUsername;
 
-        generateRandomMqttUsername();
-        subscriberTopic = MQTT_OUT_TOPIC_PREFIX + mqttUsername;
-        publisherTopic = MQTT_IN_TOPIC_PREFIX + mqttUsername;
+        log.log(INFO, "Connecting: {0}:{1} with username ''{2}'' in topic ''{3}''", new Object[]{host, port, newMqttUsername, newSubscriberTopic});
+        MqttConnectionPoolFactory factory = new MqttConnectionPoolFactory(host, port, newMqttUsername, newSubscriberTopic);
 
-        log.log(INFO, "Connecting: {0}:{1} with username ''{2}'' in topic ''{3}''", new Object[]{host, port, mqttUsername, subscriberTopic});
-        MqttConnectionPoolFactory factory = new MqttConnectionPoolFactory(host, port, mqttUsername, subscriberTopic);
+        MqttConnectionPool newConnectionPool = new MqttConnectionPool(factory);
+        ClientCarrier newCarrier = new ClientCarrierImpl(this, executor, newConnectionPool);
+        newCarrier.bindParticipantToTopic(model.getServer(), newSubscriberTopic);
+        return new CarrierSetup(newCarrier, newConnectionPool, newMqttUsername);
+    }
 
-        connectionPool = new MqttConnectionPool(factory);
-        carrier = new ClientCarrierImpl(this, executor, connectionPool);
-        carrier.bindParticipantToTopic(model.getServer(), subscriberTopic);
+    /**
+     * Makes the given carrier the current one. This has to be called while
+     * holding the connection lock.
+     */
+    private void use(CarrierSetup setup) {
+        carrier = setup.carrier;
+        connectionPool = setup.connectionPool;
+        mqttUsername = setup.mqttUsername;
+        subscriberTopic = setup.subscriberTopic;
+        publisherTopic = setup.publisherTopic;
     }
 
-    void generateRandomMqttUsername() {
+    String generateRandomMqttUsername() {
         final int alphabetLength = MQTT_USERNAME_ALPHABET.length();
         SecureRandom random = new SecureRandom();
         StringBuilder randomName = new StringBuilder();
@@ -99,95 +212,283 @@ public class ConnectionModel implements ClientCarrierModel {
             randomName.append(nextSymbol);
         }
 
-        mqttUsername = randomName.toString();
+        return randomName.toString();
     }
 
+    /**
+     * Starts receiving messages with the current carrier in the background.
+     * When receiving stops while the connection is still wanted, the
+     * connection is considered lost and will be re-established.
+     */
     public void startAsyncReceiving() {
+        final ClientCarrier receivingCarrier = carrier;
+
         executor.runAsync(new Task() {
             @Override
             public void run() {
-                startReceiving();
+                try {
+                    receivingCarrier.startReceiving();
+                } catch (RuntimeException ex) {
+                    log.log(WARNING, "Receiving stopped: {0}", ex.getMessage());
+                }
+
+                if (isConnectionWanted && receivingCarrier == carrier) {
+                    connectionLost();
+                }
             }
         });
     }
 
+    private void connectionLost() {
+        log.log(WARNING, "The connection to the server is lost; reconnect in the background.");
+        invalidateSession();
+        bus.post(UPDATE_CONNECTION_STATUS);
+        reconnectSupervisor.connectionLost();
+    }
+
+    /**
+     * Builds a new connection pool and carrier and opens a first connection
+     * before the previous carrier is shut down. Afterwards, receiving and the
+     * handshake are restarted. If no connection can be opened, the previous
+     * carrier is shut down nevertheless, so that no connection to a server
+     * that is not wanted anymore stays open. If {@link #disconnect()} is called
+     * while the connection is opened, the new carrier is shut down again.
+     *
+     * @return true if the new connection could be opened, false otherwise.
+     */
+    boolean reconnect() {
+        if (!isConnectionWanted) {
+            return true;
+        }
+
+        CarrierSetup newSetup = openCarrier();
+        ClientCarrier previousCarrier;
+
+        synchronized (connectionLock) {
+            if (!isConnectionWanted) { // Disconnected while opening.
+                shutdownQuietly(newSetup != null ? newSetup.carrier : null);
+                return true;
+            }
+
+            previousCarrier = carrier;
+
+            if (newSetup != null) {
+                use(newSetup);
+            }
+        }
+
+        shutdownQuietly(previousCarrier);
+
+        if (newSetup == null) {
+            return false;
+        }
+
+        startAsyncReceiving();
+        startHandshake();
+        return true;
+    }
+
+    /**
+     * Builds a new connection pool and carrier for the current {@link Server}
+     * and opens a first connection with them. Neither the current carrier nor
+     * its MQTT username and topics are replaced.
+     *
+     * @return The new carrier with its pool and names, or null if no
+     * connection could be opened.
+     */
+    CarrierSetup openCarrier() {
+        CarrierSetup newSetup = null;
+
+        try {
+            newSetup = createCarrier();
+            newSetup.connectionPool.addObject();
+            return newSetup;
+        } catch (Exception ex) {
+            log.log(INFO, "Could not connect: {0}", ex.getMessage());
+            shutdownQuietly(newSetup != null ? newSetup.carrier : null);
+            return null;
+        }
+    }
+
+    private void shutdownQuietly(ClientCarrier carrierToShutdown) {
+        if (carrierToShutdown == null) {
+            return;
+        }
+
+        try {
+            carrierToShutdown.shutdown();
+        } catch (RuntimeException ex) {
+            log.log(INFO, "Could not shut down carrier: {0}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Starts a full, signed handshake with the configured {@link Server}.
+     * <p>
+     * This is done on every connect: the Beam protocol has no message type to
+     * resume an earlier {@link Session}, and the server keeps no session state
+     * beyond the MQTT connection. So a cached session key could not be
+     * presented to the server anyway.
+     */
     public void startHandshake() {
         challenger = new HandshakeChallenger(model.getUser());
         encryptAndSend(challenger.produceChallenge(model.getServer()), publisherTopic);
     }
 
+    /**
+     * Queues the given ciphertext for decryption and handling. When the
+     * inbound queue is full, the message is dropped.
+     *
+     * @param ciphertext The received ciphertext.
+     * @param username The username, as delivered by the carrier.
+     */
     @Override
-    public void consumeMessage(final byte[] ciphertext, final String username) {
-        executor.runAsync(new Task() {
-            @Override
-            public void run() {
-                CryptoPacker packer = null;
+    public void consumeMessage(byte[] ciphertext, String username) {
+        if (!inboundPipeline.offer(ciphertext, username)) {
+            log.log(WARNING, "Inbound queue is full; dropped message from ''{0}''.", username);
+        }
+    }
 
-                try {
-                    packer = packerPool.borrowObject();
-                    Message request = packer.decryptAndUnpack(ciphertext, model.getUser());
-                    log.log(INFO, "Handle request of type: {0}", request.getType().toString());
-                    Message response = produceResponse(request);
-
-                    if (response != null) {
-                        log.log(INFO, "Send response of type: {0}", response.getType().toString());
-                        encryptAndSend(response, publisherTopic);
-                    }
-                } catch (Exception ex) {
-                    log.log(WARNING, "Could not handle incoming message: {0}", ex.getMessage());
-                } finally {
-                    packerPool.returnObject(packer);
-                }
+    private Message decryptAndFilter(CryptoPacker packer, byte[] ciphertext) {
+        try {
+            Message request = packer.decryptAndUnpack(ciphertext, model.getUser());
+
+            if (!senderFilter.accepts(request)) {
+                log.log(INFO, "Dropped message of type {0} from a sender that is not accepted.", request.getType().toString());
+                return null;
             }
-        });
+
+            return request;
+        } catch (Exception ex) {
+            log.log(WARNING, "Could not decrypt incoming message: {0}", ex.getMessage());
+            return null;
+        }
+    }
+
+    private void handleRequest(Message request) {
+        try {
+            log.log(INFO, "Handle request of type: {0}", request.getType().toString());
+            Message response = produceResponse(request);
+
+            if (response != null) {
+                log.log(INFO, "Send response of type: {0}", response.getType().toString());
+                encryptAndSend(response, publisherTopic);
+            }
+        } catch (Exception ex) {
+            log.log(WARNING, "Could not handle incoming message: {0}", ex.getMessage());
+        }
     }
 
     private Message produceResponse(Message message) {
-        switch (message.getType()) {
+        if (!handlers.isRegistered(message.getType())) {
+            log.log(INFO, "Received message of unknown type; ignore it.");
+            return null;
+        }
 
-            case HS_RESPONSE:
-                HandshakeResponseHandler responseHandler = new HandshakeResponseHandler(this);
-                Message success = responseHandler.handle(message);
-                bus.post(UPDATE_CONNECTION_STATUS);
-                return success;
+        Message response = handlers.handle(message);
 
-            default:
-                log.log(INFO, "Received message of unknown type; ignore it.");
+        if (message.getType() == HS_RESPONSE) {
+            bus.post(UPDATE_CONNECTION_STATUS);
         }
 
-        return null;
+        return response;
     }
 
+    /**
+     * Queues the given message to be encrypted and sent in the next outbound
+     * batch.
+     *
+     * @param message The message to send.
+     * @param topic The topic to publish to.
+     */
     @Override
-    public void encryptAndSend(final Message message, final String topic) {
-        executor.runAsync(new Task() {
-            @Override
-            public void run() {
-                CryptoPacker packer = null;
+    public void encryptAndSend(Message message, String topic) {
+        outboundBatcher.enqueue(message, topic);
+    }
 
-                try {
-                    packer = packerPool.borrowObject();
-                    byte[] ciphertext = packer.packAndEncrypt(message);
-                    carrier.deliverMessage(ciphertext, topic);
-                } catch (Exception ex) {
-                    log.log(WARNING, "Could not send message: {0}", ex.getMessage());
-                } finally {
-                    packerPool.returnObject(packer);
-                }
-            }
-        });
+    /**
+     * Moves a wanted connection to the {@link Server} currently set in the
+     * {@link MainModel}. The new connection is opened before the old one is
+     * shut down. If that fails, the old one is shut down anyway and the new
+     * one is re-established in the background. If no
+     * connection is wanted, nothing happens since the next {@link #connect()}
+     * uses the new server anyway.
+     */
+    public void switchServer() {
+        if (!isConnectionWanted) {
+            return;
+        }
+
+        reconnectSupervisor.cancel();
+        invalidateSession();
+        bus.post(UPDATE_CONNECTION_STATUS);
+
+        if (!reconnect()) {
+            connectionLost();
+        }
     }
 
     public void disconnect() {
-        carrier.shutdown();
-        session.invalidateSession();
-        session = null;
+        ClientCarrier disconnectedCarrier;
+
+        synchronized (connectionLock) {
+            isConnectionWanted = false;
+            disconnectedCarrier = carrier;
+        }
+
+        reconnectSupervisor.cancel();
+        shutdownQuietly(disconnectedCarrier);
+        invalidateSession();
 
         bus.post(UPDATE_CONNECTION_STATUS);
     }
 
+    private void invalidateSession() {
+        Session invalidSession = session;
+        session = null;
+
+        if (invalidSession != null) {
+            invalidSession.invalidateSession();
+        }
+    }
+
+    /**
+     * @return The number of received messages waiting to be handled.
+     */
+    public int getInboundQueueDepth() {
+        return inboundPipeline.getQueueDepth();
+    }
+
+    /**
+     * @return The number of received messages dropped because the inbound
+     * queue was full.
+     */
+    public long getDroppedInboundMessages() {
+        return inboundPipeline.getDroppedMessages();
+    }
+
     public boolean isConnected() {
         return carrier != null && session != null && session.getKey() != null;
     }
 
+    /**
+     * A carrier together with the connection pool and the MQTT names it has
+     * been built with. They are only taken over by the model together, once
+     * the carrier is open.
+     */
+    static class CarrierSetup {
+
+        final ClientCarrier carrier;
+        final MqttConnectionPool connectionPool;
+        final String mqttUsername, subscriberTopic, publisherTopic;
+
+        CarrierSetup(ClientCarrier carrier, MqttConnectionPool connectionPool, String mqttUsername) {
+            this.carrier = carrier;
+            this.connectionPool = connectionPool;
+            this.mqttUsername = mqttUsername;
+            this.subscriberTopic = MQTT_OUT_TOPIC_PREFIX + mqttUsername;
+            this.publisherTopic = MQTT_IN_TOPIC_PREFIX + mqttUsername;
+        }
+    }
+
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.model;
+
+import java.security.KeyPair;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.beamproject.common.crypto.EccKeyPairGenerator;
+import org.beamproject.common.util.Executor;
+import org.beamproject.common.util.Task;
+
+/**
+ * Generates {@link KeyPair}s in the background before they are needed, so that
+ * taking one does usually not have to wait for the generation.
+ */
+class KeyPairPool {
+
+    private final static long POLL_INTERVAL_MILLIS = 50;
+    private final Executor executor;
+    private final int size;
+    private final BlockingQueue<KeyPair> keyPairs = new LinkedBlockingQueue<>();
+    private final AtomicInteger pendingGenerations = new AtomicInteger();
+
+    KeyPairPool(Executor executor, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("The size has to be positive.");
+        }
+
+        this.executor = executor;
+        this.size = size;
+    }
+
+    /**
+     * Starts generating as many {@link KeyPair}s as are missing to fill the
+     * pool.
+     */
+    void fill() {
+        while (keyPairs.size() + pendingGenerations.get() < size) {
+            pendingGenerations.incrementAndGet();
+            executor.runAsync(new Task() {
+                @Override
+                public void run() {
+                    try {
+                        keyPairs.add(EccKeyPairGenerator.generate());
+                    } finally {
+                        pendingGenerations.decrementAndGet();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Takes a pre-generated {@link KeyPair}. If none is available but one is
+     * being generated, this waits for it. Otherwise a new one is generated
+     * directly.
+     *
+     * @return A new key pair, never handed out before.
+     */
+    KeyPair take() {
+        KeyPair keyPair = keyPairs.poll();
+
+        while (keyPair == null && pendingGenerations.get() > 0) {
+            keyPair = pollWithTimeout();
+        }
+
+        return keyPair != null ? keyPair : EccKeyPairGenerator.generate();
+    }
+
+    private KeyPair pollWithTimeout() {
+        try {
+            return keyPairs.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return EccKeyPairGenerator.generate();
+        }
+    }
+
+    int getAvailableKeyPairs() {
+        return keyPairs.size();
+    }
+
+}
@@ -19,23 +19,21 @@
 package org.beamproject.client.model;
 
 import com.google.common.eventbus.EventBus;
+import com.google.common.io.BaseEncoding;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
-import java.net.URISyntaxException;
 import java.security.KeyPair;
-import java.util.ArrayList;
+import java.security.MessageDigest;
 import java.util.Arrays;
-import java.util.List;
 import java.util.Properties;
 import static java.util.logging.Level.INFO;
-import static java.util.logging.Level.SEVERE;
+import static java.util.logging.Level.WARNING;
 import java.util.logging.Logger;
 import lombok.Getter;
 import lombok.Setter;
 import org.beamproject.client.App;
+import org.beamproject.client.Event;
 import static org.beamproject.client.Event.DISPOSE;
 import static org.beamproject.client.Event.ENCRYPTED_CONFIG_UNLOCKED;
 import static org.beamproject.client.Event.SHOW_MAIN_WINDOW;
@@ -43,8 +41,22 @@ import static org.beamproject.client.Event.SHOW_UNLOCK_LAYER;
 import static org.beamproject.client.Event.SHOW_WIZARD_WELCOME_LAYER;
 import static org.beamproject.client.Event.UNLOCK_LAYER_WRONG_PASSWORD;
 import static org.beamproject.client.Event.UPDATE_CONNECTION_STATUS;
+import static org.beamproject.client.Event.USER_ADDRESS_CHANGED;
+import org.beamproject.client.storage.ChatHistory;
+import org.beamproject.client.storage.ContactStore;
+import org.beamproject.client.storage.ConversationIndex;
+import org.beamproject.client.storage.HistoryLog;
+import org.beamproject.client.storage.SearchIndex;
+import org.beamproject.client.storage.StorageCryptor;
 import org.beamproject.client.util.ClipboardAccess;
 import org.beamproject.client.util.ConfigKey;
+import org.beamproject.client.util.ConfigPersister;
+import org.beamproject.client.util.QrCodeCache;
+import org.beamproject.client.util.QrCodeRenderer;
+import org.beamproject.client.util.WriteBehind;
+import static org.beamproject.client.util.ConfigKey.DATA_KEY;
+import static org.beamproject.client.util.ConfigKey.KDF_ITERATIONS;
+import static org.beamproject.client.util.ConfigKey.KEY_CHECK;
 import static org.beamproject.client.util.ConfigKey.PASSWORD;
 import static org.beamproject.client.util.ConfigKey.SALT;
 import static org.beamproject.client.util.ConfigKey.SERVER_ADDRESS;
@@ -61,7 +73,6 @@ import org.beamproject.common.util.Chars;
 import org.beamproject.common.util.Config;
 import org.beamproject.common.util.Executor;
 import org.beamproject.common.util.Files;
-import org.beamproject.common.util.QrCode;
 import org.beamproject.common.util.Task;
 
 /**
@@ -87,12 +98,28 @@ public class MainModel {
         EVERYONE
     }
     private static final int MAXIMAL_QR_CODE_SIDE_LENGTH_IN_PX = 200;
+    private static final int QR_CODE_BUCKET_SIZE_IN_PX = 16;
+    private static final long CONFIG_WRITE_QUIET_PERIOD_MILLIS = 500;
     @Inject
     Logger log;
     private final EventBus bus;
     private final Config<ConfigKey> config;
     private final Files files;
     private final Executor executor;
+    private final QrCodeCache qrCodeCache = new QrCodeCache(QR_CODE_BUCKET_SIZE_IN_PX);
+    ConfigPersister configPersister;
+    private volatile Event[] startupEvents;
+    private volatile Properties encryptedConfigProperties;
+    private final WriteBehind configWriter = new WriteBehind(new Runnable() {
+        @Override
+        public void run() {
+            try {
+                storeConfigs();
+            } catch (IllegalStateException ex) {
+                log.log(WARNING, "Could not store the configurations: {0}", ex.getMessage());
+            }
+        }
+    }, CONFIG_WRITE_QUIET_PERIOD_MILLIS);
     @Getter
     @Setter
     private EncryptedConfig<ConfigKey> encryptedConfig;
@@ -106,7 +133,13 @@ public class MainModel {
     private Server server;
     @Inject
     @Getter
-    private ConnectionModel connectionModel;
+    ConnectionModel connectionModel;
+    @Inject
+    @Getter
+    ContactStore contactStore;
+    @Inject
+    @Getter
+    ChatHistory chatHistory;
 
     @Inject
     public MainModel(EventBus bus, Config<ConfigKey> config, Files files, Executor executor) {
@@ -114,6 +147,7 @@ public class MainModel {
         this.config = config;
         this.files = files;
         this.executor = executor;
+        this.configPersister = new ConfigPersister(files);
     }
 
     /**
@@ -123,27 +157,71 @@ public class MainModel {
      */
     public void bootstrap() {
         integrateBouncyCastle();
+        readConfigs();
+        deriveKey();
+        prepareBootstrap();
+        completeBootstrap();
+    }
 
-        if (isFirstStart()) {
-            bus.post(SHOW_WIZARD_WELCOME_LAYER);
-            return;
+    /**
+     * Registers the BouncyCastle provider, which is needed to derive the keys
+     * and to restore the key pair of the {@link User}.
+     */
+    public static void integrateBouncyCastle() {
+        initBouncyCastleProvider();
+    }
+
+    /**
+     * Remembers the {@link Config} as stored and, if an account exists, reads
+     * the file of the {@link EncryptedConfig}, so that unlocking does not have
+     * to read it anymore.
+     */
+    public void readConfigs() {
+        configPersister.remember(config.copyToProperties(), App.CONFIG_PATH);
+
+        if (!isFirstStart()) {
+            encryptedConfigProperties = files.loadConfigIfAvailable(App.ENCRYPTED_CONFIG_PATH);
         }
+    }
 
-        if (isPasswordRemembered()) {
-            unlockData(Chars.bytesToUtfChars(config.getAsBytes(PASSWORD)));
-            return;
+    /**
+     * Derives the key of the {@link EncryptedConfig} from the remembered
+     * password, if any, and decrypts the config with it. This has to be called
+     * after {@link #integrateBouncyCastle()} and {@link #readConfigs()}.
+     */
+    public void deriveKey() {
+        if (!isFirstStart() && isPasswordRemembered()) {
+            loadEncryptedConfigQuietly(Chars.bytesToUtfChars(config.getAsBytes(PASSWORD)));
         }
+    }
 
-        bus.post(SHOW_UNLOCK_LAYER);
+    /**
+     * Does the rest of {@link #bootstrap()} that does not involve the view:
+     * if the key has been derived by {@link #deriveKey()}, the user is
+     * restored and the local data is opened. This may run while the view is
+     * still being constructed.
+     */
+    public void prepareBootstrap() {
+        if (isFirstStart()) {
+            startupEvents = new Event[]{SHOW_WIZARD_WELCOME_LAYER};
+        } else if (!isPasswordRemembered()) {
+            startupEvents = new Event[]{SHOW_UNLOCK_LAYER};
+        } else if (encryptedConfig != null && openUnlockedData()) {
+            startupEvents = new Event[]{ENCRYPTED_CONFIG_UNLOCKED, SHOW_MAIN_WINDOW};
+        } else { // The unlock layer is built lazily, so it is shown first.
+            startupEvents = new Event[]{SHOW_UNLOCK_LAYER, UNLOCK_LAYER_WRONG_PASSWORD};
+        }
     }
 
-    private void integrateBouncyCastle() {
-        executor.runAsync(new Task() {
-            @Override
-            public void run() {
-                initBouncyCastleProvider();
-            }
-        });
+    /**
+     * Completes {@link #bootstrap()} by telling the view what to show. This
+     * has to be called after {@link #prepareBootstrap()}, once the view is
+     * registered on the bus.
+     */
+    public void completeBootstrap() {
+        for (Event event : startupEvents) {
+            bus.post(event);
+        }
     }
 
     private boolean isFirstStart() {
@@ -174,21 +252,205 @@ public class MainModel {
      * @param password The password, used to decrypted the data.
      */
     public void unlockData(char[] password) {
-        try {
-            loadEncryptedConfig(password);
-            restoreUserAndServer();
+        if (unlockWithEnteredPassword(password)) {
             applyUserEnvironment();
-        } catch (IllegalArgumentException | CryptoException ex) {
+        } else {
             bus.post(UNLOCK_LAYER_WRONG_PASSWORD);
+        }
+    }
+
+    private boolean unlockWithEnteredPassword(char[] password) {
+        char[] configPassword;
+
+        try {
+            configPassword = toConfigPassword(password);
+        } catch (IllegalArgumentException ex) {
+            log.log(WARNING, "Could not stretch the password: {0}", ex.getMessage());
+            return false;
+        }
+
+        return unlock(configPassword);
+    }
+
+    private boolean unlock(char[] password) {
+        return loadEncryptedConfigQuietly(password) && openUnlockedData();
+    }
+
+    private boolean loadEncryptedConfigQuietly(char[] password) {
+        Properties encryptedConfigs = encryptedConfigProperties;
+
+        if (encryptedConfigs == null) {
+            encryptedConfigs = files.loadConfigIfAvailable(App.ENCRYPTED_CONFIG_PATH);
+            encryptedConfigProperties = encryptedConfigs;
+        }
+
+        if (!isKeyCheckMatching(password, encryptedConfigs)) {
+            log.log(INFO, "The key check does not match, the password is wrong.");
+            return false;
+        }
+
+        try {
+            loadEncryptedConfig(password, encryptedConfigs);
+            return true;
+        } catch (IllegalArgumentException | CryptoException ex) {
             log.log(INFO, "Could not decrypt data, possibly password wrong: {0}", ex.getMessage());
+            return false;
         }
     }
 
-    private void loadEncryptedConfig(char[] password) {
-        Properties encryptedConfigs = files.loadConfigIfAvailable(App.ENCRYPTED_CONFIG_PATH);
+    private boolean openUnlockedData() {
+        try {
+            restoreUserAndServer();
+            openLocalStores();
+            return true;
+        } catch (IllegalArgumentException | CryptoException ex) {
+            log.log(INFO, "Could not open the unlocked data: {0}", ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Turns the password entered by the user into the password of the
+     * {@link EncryptedConfig}. If the {@link Config} holds calibrated
+     * {@link ConfigKey#KDF_ITERATIONS}, the password is stretched with them,
+     * so that unlocking takes about the calibrated time on this machine.
+     * Configs created before the calibration use the password as it is.
+     * <p>
+     * A remembered password is already the password of the
+     * {@link EncryptedConfig} and must not be passed to this method.
+     *
+     * @param password The password entered by the user.
+     * @return The password of the {@link EncryptedConfig}.
+     * @throws IllegalArgumentException If the stored iterations are invalid.
+     */
+    public char[] toConfigPassword(char[] password) {
+        if (!config.contains(KDF_ITERATIONS)) {
+            return password;
+        }
+
+        int iterations = Integer.parseInt(config.getAsString(KDF_ITERATIONS));
+        return StorageCryptor.stretchPassword(password, config.getAsBytes(SALT), iterations);
+    }
+
+    /**
+     * Changes the password of the {@link EncryptedConfig}. The locally stored
+     * data is not affected, since it is encrypted with the
+     * {@link ConfigKey#DATA_KEY}. The configurations are stored in the
+     * background.
+     *
+     * @param newPassword The new password.
+     */
+    public void changePassword(char[] newPassword) {
+        encryptedConfig.changePassword(toConfigPassword(newPassword));
+        storeConfigsLater();
+    }
+
+    /**
+     * Compares the {@link ConfigKey#KEY_CHECK} stored with the encrypted
+     * config to the one of the given password. Files without a key check,
+     * or with an unreadable one, are left to the {@link EncryptedConfig}.
+     */
+    private boolean isKeyCheckMatching(char[] password, Properties encryptedConfigs) {
+        String storedKeyCheck = encryptedConfigs.getProperty(KEY_CHECK.toString());
+
+        if (storedKeyCheck == null) {
+            return true;
+        }
+
+        try {
+            byte[] expectedKeyCheck = BaseEncoding.base64().decode(storedKeyCheck);
+            return MessageDigest.isEqual(expectedKeyCheck, StorageCryptor.computeKeyCheck(password));
+        } catch (IllegalArgumentException ex) {
+            log.log(WARNING, "Could not read the key check: {0}", ex.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * Decrypts the {@link EncryptedConfig} from the given properties, read by
+     * {@link #readConfigs()} or on unlocking. Reading a value makes sure the
+     * key is derived right here.
+     */
+    private void loadEncryptedConfig(char[] password, Properties encryptedConfigs) {
+        Properties encryptedEntries = new Properties();
+        encryptedEntries.putAll(encryptedConfigs);
+        encryptedEntries.remove(KEY_CHECK.toString());
         byte[] salt = config.getAsBytes(SALT);
 
-        encryptedConfig = new EncryptedConfig<>(password, salt, encryptedConfigs);
+        EncryptedConfig<ConfigKey> loadedConfig = new EncryptedConfig<>(password, salt, encryptedEntries);
+        loadedConfig.getAsString(USERNAME);
+        encryptedConfig = loadedConfig;
+        encryptedConfigProperties = null;
+
+        Properties rememberedConfigs = encryptedConfig.copyToProperties();
+        if (encryptedConfigs.containsKey(KEY_CHECK.toString())) {
+            rememberedConfigs.setProperty(KEY_CHECK.toString(), encryptedConfigs.getProperty(KEY_CHECK.toString()));
+        }
+        configPersister.remember(rememberedConfigs, App.ENCRYPTED_CONFIG_PATH);
+    }
+
+    /**
+     * Copies the {@link EncryptedConfig} into properties to store, together
+     * with the {@link ConfigKey#KEY_CHECK} of its password if the password is
+     * stretched. Both end up in the same file, so they are always replaced
+     * together.
+     */
+    private Properties copyEncryptedConfigToProperties() {
+        Properties properties = encryptedConfig.copyToProperties();
+
+        if (config.contains(KDF_ITERATIONS)) {
+            byte[] keyCheck = StorageCryptor.computeKeyCheck(encryptedConfig.getPassword());
+            properties.setProperty(KEY_CHECK.toString(), BaseEncoding.base64().encode(keyCheck));
+        }
+
+        return properties;
+    }
+
+    /**
+     * Opens the locally stored data, such as the contacts and the message
+     * history, with keys derived from the {@link ConfigKey#DATA_KEY} in the
+     * {@link EncryptedConfig}. The contacts are read and the history is opened
+     * in the background; opening the history only reads its last segment and
+     * the last entry of every conversation, not the whole history.
+     */
+    public void openLocalStores() {
+        byte[] masterKey = getOrCreateDataKey();
+        final StorageCryptor historyCryptor = new StorageCryptor(masterKey, HistoryLog.LABEL);
+        final StorageCryptor indexCryptor = new StorageCryptor(masterKey, ConversationIndex.LABEL);
+        final StorageCryptor searchCryptor = new StorageCryptor(masterKey, SearchIndex.LABEL);
+        contactStore.open(new StorageCryptor(masterKey, ContactStore.LABEL));
+        Arrays.fill(masterKey, (byte) 0);
+
+        executor.runAsync(new Task() {
+            @Override
+            public void run() {
+                try {
+                    contactStore.load();
+                    chatHistory.open(historyCryptor, indexCryptor, searchCryptor);
+                } catch (IllegalStateException ex) {
+                    log.log(WARNING, "Could not open the local data: {0}", ex.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the data key from the {@link EncryptedConfig}. An installation
+     * without one, such as one set up before the data key existed, gets a new
+     * random key.
+     */
+    private byte[] getOrCreateDataKey() {
+        if (!encryptedConfig.contains(DATA_KEY)) {
+            encryptedConfig.set(DATA_KEY, StorageCryptor.generateMasterKey());
+            storeConfigsLater();
+        }
+
+        return encryptedConfig.getAsBytes(DATA_KEY);
+    }
+
+    private void closeLocalStores() {
+        contactStore.close();
+        chatHistory.close();
     }
 
     private void restoreUserAndServer() {
@@ -217,7 +479,11 @@ public class MainModel {
 
     /**
      * Stores the {@link Config} and the {@link EncryptedConfig} via
-     * {@link Properties} to the configured file paths.
+     * {@link Properties} to the configured file paths. A file is only written
+     * if its content has changed since it was last read or stored, and it is
+     * replaced atomically. The {@link EncryptedConfig} is written first, so
+     * the {@link Config} never refers to an encrypted config that has not
+     * been written yet.
      *
      * @throws IllegalStateException If no instance of {@link EncryptedConfig}
      * is available.
@@ -227,16 +493,38 @@ public class MainModel {
             throw new IllegalStateException("The encrypted config may not be null.");
         }
 
+        Properties encryptedConfigProperties = copyEncryptedConfigToProperties();
+        configPersister.store(encryptedConfigProperties, App.ENCRYPTED_CONFIG_PATH);
+
         Properties configProperties = config.copyToProperties();
-        files.storeProperies(configProperties, App.CONFIG_PATH);
+        configPersister.store(configProperties, App.CONFIG_PATH);
+    }
 
-        Properties encryptedConfigProperties = encryptedConfig.copyToProperties();
-        files.storeProperies(encryptedConfigProperties, App.ENCRYPTED_CONFIG_PATH);
+    /**
+     * Stores the configurations in the background, once they have not been
+     * changed for {@value #CONFIG_WRITE_QUIET_PERIOD_MILLIS} ms. So a burst of
+     * changes, like typing a new username, results in a single write and the
+     * caller never waits for the disk.
+     */
+    public void storeConfigsLater() {
+        configWriter.request();
+    }
+
+    /**
+     * Completes the storing of the configurations requested via
+     * {@link #storeConfigsLater()}, if any.
+     */
+    public void flushConfigs() {
+        configWriter.flush();
     }
 
     /**
      * Generates a QR code containing the Beam address of the {@link User}. When
      * the given with is too large, the configured maximal width will be used.
+     * <p>
+     * The images are cached per address and rounded down to steps of
+     * {@value #QR_CODE_BUCKET_SIZE_IN_PX} pixel, so repeated calls while
+     * resizing do not encode the address again.
      *
      * @param qrCodeLableWidth The <i>suggested</i> width of the QR code.
      * @return The image.
@@ -244,7 +532,25 @@ public class MainModel {
     public BufferedImage getUserAddressQrCode(int qrCodeLableWidth) {
         int dimension = qrCodeLableWidth > MAXIMAL_QR_CODE_SIDE_LENGTH_IN_PX
                 ? MAXIMAL_QR_CODE_SIDE_LENGTH_IN_PX : qrCodeLableWidth;
-        return QrCode.encode(user.getAddress(), dimension);
+        return qrCodeCache.get(user.getAddress(), dimension);
+    }
+
+    /**
+     * Creates a renderer that generates the QR code of the {@link User}'s Beam
+     * address in the background, as done by
+     * {@link #getUserAddressQrCode(int)}, and shows it on the Event Dispatch
+     * Thread.
+     *
+     * @param target The target to show the QR code.
+     * @return The renderer.
+     */
+    public QrCodeRenderer createUserAddressQrCodeRenderer(QrCodeRenderer.Target target) {
+        return new QrCodeRenderer(executor, new QrCodeRenderer.Source() {
+            @Override
+            public BufferedImage render(int sideLength) {
+                return getUserAddressQrCode(sideLength);
+            }
+        }, target);
     }
 
     public void copyAddressToClipboard() {
@@ -261,6 +567,7 @@ public class MainModel {
     public void setUsername(String username) {
         user.setUsername(username);
         encryptedConfig.set(USERNAME, username);
+        storeConfigsLater();
     }
 
     public void connect(final boolean doConnect) {
@@ -269,9 +576,7 @@ public class MainModel {
             public void run() {
                 if (doConnect) {
                     log.info("Connecting...");
-                    connectionModel.prepareConnectionPoolAndCarrier();
-                    connectionModel.startAsyncReceiving();
-                    connectionModel.startHandshake();
+                    connectionModel.connect();
                 } else {
                     log.info("Disconnecting...");
                     connectionModel.disconnect();
@@ -306,6 +611,7 @@ public class MainModel {
                 doRemember
                 ? Chars.utfCharsToBytes(encryptedConfig.getPassword())
                 : "".getBytes());
+        storeConfigsLater();
     }
 
     private void destroyConfigObjectPassword() {
@@ -323,7 +629,9 @@ public class MainModel {
      */
     public void shutdown() {
         if (encryptedConfig != null) {
+            flushConfigs();
             storeConfigs();
+            closeLocalStores();
             destroyPassword();
         }
 
@@ -331,55 +639,28 @@ public class MainModel {
     }
 
     /**
-     * Shuts down and starts up the application. This is used when the server
-     * address changes.
+     * Switches to the {@link Server} stored in the {@link EncryptedConfig}
+     * without leaving the running application: the user is rebuilt with the
+     * new server and an existing connection is re-established to it in the
+     * background. This is used when the server address changes.
      */
     public void restart() {
-        if (encryptedConfig != null) {
-            storeConfigs();
-            destroyPassword();
-        }
-
-        runSameJarAgain();
-
-        bus.post(DISPOSE);
-    }
-
-    private void runSameJarAgain() {
-        String jrePath = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
-        File binary;
-
-        try {
-            binary = new File(App.class.getProtectionDomain().getCodeSource().getLocation().toURI());
-        } catch (URISyntaxException ex) {
-            log.log(SEVERE, "Could not find the current jar file as URI: {0}", ex.getMessage());
+        if (encryptedConfig == null) {
             return;
         }
 
-        if (!isJarFile(binary)) {
-            return;
-        }
+        storeConfigsLater();
+        restoreUserAndServer();
+        bus.post(USER_ADDRESS_CHANGED);
 
-        try {
-            List<String> command = assembleApplicationStartCommand(jrePath, binary);
-            ProcessBuilder builder = new ProcessBuilder(command);
-            builder.start();
-        } catch (IOException ex) {
-            log.log(SEVERE, "An error occurred while restarting application: {0}", ex.getMessage());
-        }
-    }
-
-    private boolean isJarFile(File file) {
-        return file.getName().endsWith(".jar");
-    }
-
-    private List<String> assembleApplicationStartCommand(String jrePath, File binary) {
-        final ArrayList<String> command = new ArrayList<>();
-        command.add(jrePath);
-        command.add("-jar");
-        command.add(binary.getPath());
+        executor.runAsync(new Task() {
+            @Override
+            public void run() {
+                connectionModel.switchServer();
+            }
+        });
 
-        return command;
+        bus.post(SHOW_MAIN_WINDOW);
     }
 
     private void destroyPassword() {
@@ -51,13 +51,15 @@ public class MenuModel {
     }
 
     /**
-     * Sets the {@link EncryptedConfig} to accept messages from the given
-     * senders.
+     * Sets the {@link EncryptedConfig} and the {@link ConnectionModel} to
+     * accept messages from the given senders.
      *
      * @param sender The setting to store.
      */
     public void setAcceptedMessageSenders(AcceptedSender sender) {
         mainModel.getEncryptedConfig().set(ACCEPTED_MESSAGE_SENDER, sender.toString());
+        mainModel.getConnectionModel().setAcceptedSender(sender);
+        mainModel.storeConfigsLater();
     }
 
     public void showPasswordChangeLayer() {
@@ -70,24 +72,29 @@ public class MenuModel {
      * the new password.
      * <p>
      * If everything went okay, the main window will be shown.<br />
-     * If the {@code oldPassword} was is wrong, an {@link Event} about that will
-     * be sent to the bus.
+     * If the {@code oldPassword} was is wrong, or cannot be checked because the
+     * stored parameters to stretch it are invalid, an {@link Event} about that
+     * will be sent to the bus.
      *
      * @param oldPassword The old password that was used to unlock.
      * @param newPassword The new password to use from now on.
      */
     public void processPasswordChange(char[] oldPassword, char[] newPassword) {
-        if (isOldPasswordCorrect(oldPassword)) {
-            mainModel.getEncryptedConfig().changePassword(newPassword);
-            mainModel.storeConfigs();
-            bus.post(SHOW_MAIN_WINDOW);
-        } else {
-            bus.post(PASSWORD_CHANGE_WRONG_PASSWORD);
+        try {
+            if (isOldPasswordCorrect(oldPassword)) {
+                mainModel.changePassword(newPassword);
+                bus.post(SHOW_MAIN_WINDOW);
+                return;
+            }
+        } catch (IllegalArgumentException ex) {
+            // The stored KDF parameters are invalid, so no password matches.
         }
+
+        bus.post(PASSWORD_CHANGE_WRONG_PASSWORD);
     }
 
     private boolean isOldPasswordCorrect(char[] oldPassword) {
-        return Arrays.equals(oldPassword, mainModel.getEncryptedConfig().getPassword());
+        return Arrays.equals(mainModel.toConfigPassword(oldPassword), mainModel.getEncryptedConfig().getPassword());
     }
 
     public void abortPasswordChange() {
@@ -99,9 +106,9 @@ public class MenuModel {
     }
 
     /**
-     * Updates the {@link Server} address. Since this will probably require to
-     * re-connect an re-authenticate against the server, the client will also
-     * restart.
+     * Updates the {@link Server} address. Since this requires to re-connect and
+     * re-authenticate against the server, the {@link MainModel} switches over
+     * to the new server.
      *
      * @param serverAddress The new Beam address of the server.
      */
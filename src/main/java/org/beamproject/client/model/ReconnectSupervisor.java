@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.model;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.beamproject.common.util.Executor;
+import org.beamproject.common.util.Task;
+
+/**
+ * Re-establishes a lost connection in the background. The attempts are spaced
+ * with an exponential backoff, capped at a maximal delay. Every delay is
+ * randomized between its half and its full length, so that many clients losing
+ * the connection at the same time do not reconnect in lockstep.
+ */
+class ReconnectSupervisor {
+
+    /**
+     * Performs one reconnect attempt.
+     */
+    interface Connector {
+
+        /**
+         * @return true if the connection has been re-established, false
+         * otherwise.
+         */
+        boolean reconnect();
+    }
+
+    private final Executor executor;
+    private final Connector connector;
+    private final long initialDelayMillis;
+    private final long maximalDelayMillis;
+    private final Random random = new Random();
+    private final AtomicBoolean isRunning = new AtomicBoolean();
+    private final AtomicBoolean isReconnectWanted = new AtomicBoolean();
+    private final AtomicInteger cancellations = new AtomicInteger();
+
+    ReconnectSupervisor(Executor executor, Connector connector, long initialDelayMillis, long maximalDelayMillis) {
+        if (initialDelayMillis < 0 || maximalDelayMillis < initialDelayMillis) {
+            throw new IllegalArgumentException("The delays have to be positive and the maximal delay may not be smaller than the initial one.");
+        }
+
+        this.executor = executor;
+        this.connector = connector;
+        this.initialDelayMillis = initialDelayMillis;
+        this.maximalDelayMillis = maximalDelayMillis;
+    }
+
+    /**
+     * Starts reconnecting in the background, unless this is already in
+     * progress.
+     */
+    void connectionLost() {
+        isReconnectWanted.set(true);
+
+        if (isRunning.compareAndSet(false, true)) {
+            executor.runAsync(new Task() {
+                @Override
+                public void run() {
+                    reconnectUntilSuccessOrCancelled();
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops any further reconnect attempts. An attempt currently in progress
+     * is completed.
+     */
+    void cancel() {
+        cancellations.incrementAndGet();
+        isReconnectWanted.set(false);
+    }
+
+    boolean isReconnecting() {
+        return isRunning.get();
+    }
+
+    private void reconnectUntilSuccessOrCancelled() {
+        try {
+            int attempt = 0;
+
+            while (isReconnectWanted.get()) {
+                int cancellationsBefore = cancellations.get();
+                sleep(computeDelay(attempt++));
+
+                if (isReconnectWanted.compareAndSet(true, false)
+                        && !connector.reconnect()
+                        && cancellations.get() == cancellationsBefore) {
+                    isReconnectWanted.set(true);
+                }
+            }
+        } finally {
+            isRunning.set(false);
+        }
+
+        if (isReconnectWanted.get()) { // Lost again while stopping.
+            connectionLost();
+        }
+    }
+
+    /**
+     * Computes the delay before the given attempt.
+     *
+     * @param attempt The number of the attempt, starting at zero.
+     * @return A delay between half and the full backoff of this attempt.
+     */
+    long computeDelay(int attempt) {
+        long backoff = initialDelayMillis << Math.min(attempt, 30);
+
+        if (backoff > maximalDelayMillis || backoff < 0) {
+            backoff = maximalDelayMillis;
+        }
+
+        long half = backoff / 2;
+        return half + (long) (random.nextDouble() * (backoff - half));
+    }
+
+    private void sleep(long millis) {
+        if (millis == 0) {
+            return;
+        }
+
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            cancel();
+        }
+    }
+
+}
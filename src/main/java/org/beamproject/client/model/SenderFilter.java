@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.model;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import org.beamproject.client.model.MainModel.AcceptedSender;
+import static org.beamproject.client.model.MainModel.AcceptedSender.CONTACTS;
+import static org.beamproject.client.model.MainModel.AcceptedSender.EVERYONE;
+import org.beamproject.client.storage.ContactStore;
+import static org.beamproject.common.message.Field.Cnt.PUBLIC_KEY;
+import org.beamproject.common.message.Field.Cnt.TypeValue;
+import org.beamproject.common.message.Message;
+import org.beamproject.common.message.MessageHandler;
+
+/**
+ * Decides whether a received {@link Message} is handled at all, before any
+ * {@link MessageHandler} or validator runs.
+ * <p>
+ * When only {@link AcceptedSender#CONTACTS} are accepted, the fingerprint of
+ * the sender's public key is looked up in the {@link ContactStore}, which
+ * holds all contacts in memory once loaded.
+ * <p>
+ * Messages of the exempt types, such as the handshake with the server, are
+ * always accepted.
+ */
+class SenderFilter {
+
+    private final Set<TypeValue> exemptTypes;
+    private volatile AcceptedSender acceptedSender = CONTACTS;
+    private volatile ContactStore contactStore;
+
+    SenderFilter(TypeValue... exemptTypes) {
+        this.exemptTypes = exemptTypes.length == 0
+                ? EnumSet.noneOf(TypeValue.class)
+                : EnumSet.copyOf(Arrays.asList(exemptTypes));
+    }
+
+    void setAcceptedSender(AcceptedSender acceptedSender) {
+        this.acceptedSender = acceptedSender;
+    }
+
+    void setContactStore(ContactStore contactStore) {
+        this.contactStore = contactStore;
+    }
+
+    /**
+     * @param message The decrypted message.
+     * @return true if the message should be handled, false if it should be
+     * dropped.
+     */
+    boolean accepts(Message message) {
+        if (exemptTypes.contains(message.getType()) || acceptedSender == EVERYONE) {
+            return true;
+        }
+
+        String fingerprint = readSenderFingerprint(message);
+        return fingerprint != null && isContact(fingerprint);
+    }
+
+    /**
+     * @param message The decrypted message.
+     * @return The fingerprint of the sender's public key, or null if the
+     * message has no sender.
+     */
+    static String readSenderFingerprint(Message message) {
+        Object publicKey = message.getContent().get(PUBLIC_KEY.toString());
+        return publicKey instanceof byte[] ? ContactStore.fingerprint((byte[]) publicKey) : null;
+    }
+
+    /**
+     * @param fingerprint The fingerprint of a public key.
+     * @return true if a contact with this fingerprint is stored.
+     */
+    boolean isContact(String fingerprint) {
+        ContactStore store = contactStore;
+
+        if (store == null || !store.isOpen()) {
+            return false;
+        }
+
+        return store.contains(fingerprint);
+    }
+
+}
@@ -22,14 +22,19 @@ import com.google.common.eventbus.EventBus;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import java.security.KeyPair;
+import java.util.Properties;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import lombok.experimental.Delegate;
 import static org.beamproject.client.Event.ENABLE_WIZARD_ADDRESS_GENERATED_ADDRESS;
 import static org.beamproject.client.Event.SHOW_WIZARD_ADDRESS_LAYER;
 import static org.beamproject.client.Event.SHOW_WIZARD_PASSWORD_LAYER;
 import static org.beamproject.client.model.MainModel.AcceptedSender.CONTACTS;
+import org.beamproject.client.storage.StorageCryptor;
 import org.beamproject.client.util.ConfigKey;
 import static org.beamproject.client.util.ConfigKey.ACCEPTED_MESSAGE_SENDER;
 import static org.beamproject.client.util.ConfigKey.CONNECT_TO_SERVER;
+import static org.beamproject.client.util.ConfigKey.DATA_KEY;
+import static org.beamproject.client.util.ConfigKey.KDF_ITERATIONS;
 import static org.beamproject.client.util.ConfigKey.SALT;
 import static org.beamproject.client.util.ConfigKey.SERVER_ADDRESS;
 import static org.beamproject.client.util.ConfigKey.USERNAME;
@@ -37,7 +42,6 @@ import static org.beamproject.client.util.ConfigKey.USER_PRIVATE_KEY;
 import static org.beamproject.client.util.ConfigKey.USER_PUBLIC_KEY;
 import org.beamproject.common.Server;
 import org.beamproject.common.User;
-import org.beamproject.common.crypto.EccKeyPairGenerator;
 import org.beamproject.common.crypto.EncryptedConfig;
 import org.beamproject.common.crypto.PasswordCryptor;
 import org.beamproject.common.util.Config;
@@ -52,11 +56,14 @@ import org.beamproject.common.util.Task;
 public class WizardModel {
 
     private final static boolean DO_CONNECT_PER_DEFAULT = true;
+    private final static int PREGENERATED_KEY_PAIRS = 1;
+    private final static long UNLOCK_TARGET_MILLIS = 250;
     @Delegate
     private final MainModel mainModel;
     private final EventBus bus;
     private final Config<ConfigKey> config;
     private final Executor executor;
+    private final KeyPairPool keyPairPool;
     EncryptedConfig<ConfigKey> encryptedConfig;
     String username, serverAddress;
     Server server;
@@ -70,6 +77,15 @@ public class WizardModel {
         this.bus = bus;
         this.config = config;
         this.executor = executor;
+        this.keyPairPool = new KeyPairPool(executor, PREGENERATED_KEY_PAIRS);
+    }
+
+    /**
+     * Starts generating the {@link KeyPair} of the new {@link User} in the
+     * background, so that it is ready when the welcome layer is processed.
+     */
+    public void prepareKeyPair() {
+        keyPairPool.fill();
     }
 
     /**
@@ -95,7 +111,7 @@ public class WizardModel {
         executor.runAsync(new Task() {
             @Override
             public void run() {
-                KeyPair keyPair = EccKeyPairGenerator.generate();
+                KeyPair keyPair = keyPairPool.take();
                 server = new Server(serverAddress);
                 user = new User(username, keyPair, server);
                 mainModel.setServer(server);
@@ -130,6 +146,7 @@ public class WizardModel {
             @Override
             public void run() {
                 createEncryptedConfig();
+                mainModel.openLocalStores();
                 mainModel.rememberPassword(rememberPassword);
                 copyAccoutDataToEncryptedConfig();
                 createDefaultValues();
@@ -141,12 +158,33 @@ public class WizardModel {
 
     private void createEncryptedConfig() {
         byte[] salt = PasswordCryptor.generateSalt();
-        encryptedConfig = new EncryptedConfig<>(password, salt);
+        int iterations = calibrateKdfIterations(salt);
+        encryptedConfig = new EncryptedConfig<>(StorageCryptor.stretchPassword(password, salt, iterations), salt);
+        encryptedConfig.set(DATA_KEY, StorageCryptor.generateMasterKey());
 
         config.set(SALT, salt);
+        config.set(KDF_ITERATIONS, String.valueOf(iterations));
         mainModel.setEncryptedConfig(encryptedConfig);
     }
 
+    /**
+     * Measures how long the fixed key derivation of an {@link EncryptedConfig}
+     * takes on this machine when unlocking, and calibrates the stretching of
+     * the password to take the rest of {@value #UNLOCK_TARGET_MILLIS} ms.
+     */
+    private int calibrateKdfIterations(byte[] salt) {
+        char[] probePassword = "calibration".toCharArray();
+        EncryptedConfig<ConfigKey> probe = new EncryptedConfig<>(probePassword, salt);
+        probe.set(USERNAME, "calibration");
+        Properties probeProperties = probe.copyToProperties();
+
+        long start = System.nanoTime();
+        new EncryptedConfig<ConfigKey>(probePassword, salt, probeProperties).getAsString(USERNAME);
+        long unlockMillis = NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        return StorageCryptor.calibrateIterations(Math.max(0, UNLOCK_TARGET_MILLIS - unlockMillis));
+    }
+
     private void copyAccoutDataToEncryptedConfig() {
         encryptedConfig.set(USERNAME, user.getUsername());
         encryptedConfig.set(USER_PUBLIC_KEY, user.getPublicKeyAsBytes());
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import static org.beamproject.client.storage.HistoryLog.NO_POSITION;
+
+/**
+ * The chat history of the user. Messages are stored in the
+ * {@link HistoryLog} and indexed per conversation by the
+ * {@link ConversationIndex}, so that a conversation is loaded page by page,
+ * starting with its latest messages, without reading the rest of the history.
+ * The {@link SearchIndex} makes all messages searchable by their words.
+ */
+public class ChatHistory {
+
+    private final HistoryLog log;
+    private final ConversationIndex index;
+    private final SearchIndex searchIndex;
+
+    public ChatHistory(HistoryLog log, ConversationIndex index, SearchIndex searchIndex) {
+        this.log = log;
+        this.index = index;
+        this.searchIndex = searchIndex;
+    }
+
+    /**
+     * Opens the log and the indexes. Messages that have been appended to the
+     * log but not indexed, for example because the application was killed in
+     * between, are indexed now.
+     *
+     * @param logCryptor The cryptor of the {@link HistoryLog}.
+     * @param indexCryptor The cryptor of the {@link ConversationIndex}.
+     * @param searchCryptor The cryptor of the {@link SearchIndex}.
+     */
+    public synchronized void open(StorageCryptor logCryptor, StorageCryptor indexCryptor, StorageCryptor searchCryptor) {
+        log.open(logCryptor);
+        index.open(indexCryptor);
+        searchIndex.open(searchCryptor);
+
+        for (long position = findFirstUnindexedPosition(index.getLastIndexedPosition());
+                position != NO_POSITION; position = log.nextPosition(position)) {
+            index.addMissing(log.read(position));
+        }
+
+        for (long position = findFirstUnindexedPosition(searchIndex.getLastIndexedPosition());
+                position != NO_POSITION; position = log.nextPosition(position)) {
+            searchIndex.add(log.read(position));
+        }
+    }
+
+    private long findFirstUnindexedPosition(long lastIndexedPosition) {
+        return lastIndexedPosition == NO_POSITION
+                ? log.getFirstPosition()
+                : log.nextPosition(lastIndexedPosition);
+    }
+
+    public synchronized void close() {
+        log.close();
+        index.close();
+        searchIndex.close();
+    }
+
+    public boolean isOpen() {
+        return log.isOpen() && index.isOpen() && searchIndex.isOpen();
+    }
+
+    /**
+     * Stores the given message.
+     *
+     * @param timestamp The time the message has been sent or received.
+     * @param contact The fingerprint of the contact.
+     * @param isIncoming true if the message has been received, false if it
+     * has been sent.
+     * @param text The text of the message.
+     * @return The stored entry.
+     */
+    public synchronized HistoryEntry append(long timestamp, String contact, boolean isIncoming, String text) {
+        HistoryEntry entry = log.append(timestamp, contact, isIncoming, text);
+        index.add(entry);
+        searchIndex.add(entry);
+        return entry;
+    }
+
+    /**
+     * @param contact The fingerprint of the contact.
+     * @return The number of messages exchanged with this contact.
+     */
+    public long count(String contact) {
+        return index.count(contact);
+    }
+
+    /**
+     * Loads the latest messages of a conversation.
+     *
+     * @param contact The fingerprint of the contact.
+     * @param count The maximal number of messages to load.
+     * @return The messages, oldest first.
+     */
+    public List<HistoryEntry> loadLatest(String contact, int count) {
+        return loadBefore(contact, index.count(contact), count);
+    }
+
+    /**
+     * Loads the messages of a conversation preceding a given message, for
+     * example when scrolling back.
+     *
+     * @param contact The fingerprint of the contact.
+     * @param end The number of the message within the conversation, starting
+     * at zero, before which the page ends.
+     * @param count The maximal number of messages to load.
+     * @return The messages, oldest first.
+     */
+    public List<HistoryEntry> loadBefore(String contact, long end, int count) {
+        long from = Math.max(0, end - count);
+        long[] positions = index.readPositions(contact, from, (int) (end - from));
+        List<HistoryEntry> entries = new ArrayList<>(positions.length);
+
+        for (long position : positions) {
+            entries.add(log.read(position));
+        }
+
+        return entries;
+    }
+
+    /**
+     * Searches all conversations for messages containing every word of the
+     * given query.
+     *
+     * @param query The words to search for. The case is ignored.
+     * @param maximalResults The maximal number of messages to load.
+     * @return The matching messages, newest first.
+     */
+    public List<HistoryEntry> search(String query, int maximalResults) {
+        List<Long> positions = searchIndex.search(query, maximalResults);
+        List<HistoryEntry> entries = new ArrayList<>(positions.size());
+
+        for (long position : positions) {
+            entries.add(log.read(position));
+        }
+
+        return entries;
+    }
+
+}
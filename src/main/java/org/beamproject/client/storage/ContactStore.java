@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.storage;
+
+import com.google.common.io.BaseEncoding;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.beamproject.common.User;
+
+/**
+ * Stores the contacts of the user encrypted on disk and keeps them in memory,
+ * indexed by the fingerprint of their public key.
+ * <p>
+ * The file is an append-only log of encrypted records, each adding or
+ * removing one contact. So adding a contact only appends one record instead of
+ * rewriting the whole file. The log is read on the first access after
+ * {@link #open(StorageCryptor)}, or earlier via {@link #load()}.
+ */
+public class ContactStore {
+
+    public final static String LABEL = "contacts";
+    private final static byte ADD = 1;
+    private final static byte REMOVE = 2;
+    private final static int MAXIMAL_RECORD_LENGTH = 64 * 1024;
+    private final File file;
+    private final Map<String, User> contacts = new ConcurrentHashMap<>();
+    private volatile StorageCryptor cryptor;
+    private volatile boolean isLoaded = false;
+    private volatile IllegalStateException loadFailure;
+
+    public ContactStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Unlocks the store with the given cryptor. The contacts are read lazily.
+     *
+     * @param cryptor The cryptor for the records of this store.
+     */
+    public synchronized void open(StorageCryptor cryptor) {
+        this.cryptor = cryptor;
+        contacts.clear();
+        isLoaded = false;
+        loadFailure = null;
+    }
+
+    /**
+     * Locks the store and forgets all contacts held in memory.
+     */
+    public synchronized void close() {
+        cryptor = null;
+        contacts.clear();
+        isLoaded = false;
+        loadFailure = null;
+    }
+
+    public boolean isOpen() {
+        return cryptor != null;
+    }
+
+    /**
+     * Reads the contacts from disk, unless this has already been done. If the
+     * file could not be read, this is remembered until the store is opened
+     * again, so the file is not read again on every access.
+     *
+     * @throws IllegalStateException If the store is not open or the file
+     * could not be read or decrypted.
+     */
+    public void load() {
+        if (!isLoaded) {
+            synchronized (this) {
+                if (!isLoaded) {
+                    verifyOpen();
+                    readFileOnce();
+                    isLoaded = true;
+                }
+            }
+        }
+    }
+
+    private void readFileOnce() {
+        if (loadFailure != null) {
+            throw new IllegalStateException(loadFailure.getMessage(), loadFailure);
+        }
+
+        try {
+            contacts.clear();
+            readFile();
+        } catch (IllegalStateException ex) {
+            contacts.clear();
+            loadFailure = ex;
+            throw ex;
+        }
+    }
+
+    private void readFile() {
+        if (!file.exists()) {
+            return;
+        }
+
+        long fileLength = file.length();
+        long validLength = 0;
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte[] record = readRecord(input, fileLength - validLength);
+
+                if (record == null) {
+                    break;
+                }
+
+                apply(cryptor.decrypt(record));
+                validLength += 4 + record.length;
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not read the contacts: " + ex.getMessage());
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalStateException("Could not decrypt the contacts: " + ex.getMessage());
+        }
+
+        truncateIncompleteRecord(validLength);
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @param remainingLength The number of bytes left in the file.
+     * @return The record, or null at the end of the file or if the record
+     * extends past it, having only partially been written.
+     * @throws IOException If the record could not be read or its length is
+     * invalid. This is not repaired, so no later records are lost.
+     */
+    private byte[] readRecord(DataInputStream input, long remainingLength) throws IOException {
+        if (remainingLength < 4) {
+            return null;
+        }
+
+        int length = input.readInt();
+
+        if (length >= 0 && 4L + length > remainingLength) {
+            return null;
+        }
+
+        if (length < StorageCryptor.OVERHEAD || length > MAXIMAL_RECORD_LENGTH) {
+            throw new IOException("Invalid record length: " + length);
+        }
+
+        byte[] record = new byte[length];
+        input.readFully(record);
+        return record;
+    }
+
+    private void apply(byte[] plaintext) {
+        String address = new String(plaintext, 1, plaintext.length - 1, StandardCharsets.UTF_8);
+        User contact = new User(address);
+
+        if (plaintext[0] == ADD) {
+            contacts.put(fingerprint(contact), contact);
+        } else if (plaintext[0] == REMOVE) {
+            contacts.remove(fingerprint(contact));
+        }
+    }
+
+    /**
+     * Cuts off a record that has only partially been written, for example
+     * when the application was killed while adding a contact. Otherwise, all
+     * records appended later would be unreadable.
+     */
+    private void truncateIncompleteRecord(long validLength) {
+        if (file.length() == validLength) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), WRITE)) {
+            channel.truncate(validLength);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not repair the contacts: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Adds the given contact and appends it to the file.
+     *
+     * @param contact The contact to add.
+     * @return true if the contact has been added, false if it was already
+     * stored.
+     */
+    public synchronized boolean add(User contact) {
+        load();
+        String fingerprint = fingerprint(contact);
+
+        if (contacts.containsKey(fingerprint)) {
+            return false;
+        }
+
+        append(ADD, contact);
+        contacts.put(fingerprint, contact);
+        return true;
+    }
+
+    /**
+     * Removes the contact with the given fingerprint.
+     *
+     * @param fingerprint The fingerprint of the contact's public key.
+     * @return true if the contact has been removed, false if it was not
+     * stored.
+     */
+    public synchronized boolean remove(String fingerprint) {
+        load();
+        User contact = contacts.get(fingerprint);
+
+        if (contact == null) {
+            return false;
+        }
+
+        append(REMOVE, contact);
+        contacts.remove(fingerprint);
+        return true;
+    }
+
+    private void append(byte operation, User contact) {
+        byte[] address = contact.getAddress().getBytes(StandardCharsets.UTF_8);
+        byte[] plaintext = new byte[1 + address.length];
+        plaintext[0] = operation;
+        System.arraycopy(address, 0, plaintext, 1, address.length);
+
+        byte[] record = cryptor.encrypt(plaintext);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + record.length);
+        buffer.putInt(record.length).put(record).flip();
+
+        file.getAbsoluteFile().getParentFile().mkdirs();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), CREATE, WRITE, APPEND)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+            channel.force(false);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not store the contact: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * @param fingerprint The fingerprint of the contact's public key.
+     * @return true if a contact with this fingerprint is stored.
+     */
+    public boolean contains(String fingerprint) {
+        load();
+        return contacts.containsKey(fingerprint);
+    }
+
+    /**
+     * @param fingerprint The fingerprint of the contact's public key.
+     * @return The contact, or null if there is none with this fingerprint.
+     */
+    public User get(String fingerprint) {
+        load();
+        return contacts.get(fingerprint);
+    }
+
+    public Collection<User> getContacts() {
+        load();
+        return Collections.unmodifiableCollection(contacts.values());
+    }
+
+    public int size() {
+        load();
+        return contacts.size();
+    }
+
+    private void verifyOpen() {
+        if (cryptor == null) {
+            throw new IllegalStateException("The contact store is locked.");
+        }
+    }
+
+    /**
+     * Computes the fingerprint identifying the given user, which is the
+     * SHA-256 hash of the public key, hex encoded.
+     *
+     * @param user The user.
+     * @return The fingerprint.
+     */
+    public static String fingerprint(User user) {
+        return fingerprint(user.getPublicKeyAsBytes());
+    }
+
+    /**
+     * @param publicKey The X509 encoded public key.
+     * @return The SHA-256 hash of the public key, hex encoded.
+     */
+    public static String fingerprint(byte[] publicKey) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(publicKey);
+            return BaseEncoding.base16().lowerCase().encode(hash);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("Could not compute the fingerprint: " + ex.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.beamproject.client.storage.HistoryLog.NO_POSITION;
+
+/**
+ * Indexes the {@link HistoryLog} per conversation. For every contact, a file
+ * holds one fixed-size entry per message: its sequence number and its
+ * position in the log. So the n-th message of a conversation is found without
+ * reading any other message, and a page of messages is one read of the index
+ * file.
+ * <p>
+ * Every entry is encrypted on its own, so the index neither reveals when the
+ * messages have been exchanged nor where they are stored in the log. The file
+ * names are derived from the contacts' fingerprints with a keyed hash, so
+ * they do not reveal the contacts. An {@link IndexCheckpoint} remembers the
+ * last indexed message, so opening the index does not read any conversation.
+ */
+public class ConversationIndex {
+
+    public final static String LABEL = "history-index";
+    private final static String INDEX_SUFFIX = ".index";
+    private final static String CHECKPOINT_NAME = "checkpoint";
+    private final static int ENTRY_SIZE = 16;
+    private final static int RECORD_SIZE = ENTRY_SIZE + StorageCryptor.OVERHEAD;
+    private final File directory;
+    private final IndexCheckpoint checkpoint;
+    private volatile StorageCryptor cryptor;
+
+    public ConversationIndex(File directory) {
+        this.directory = directory;
+        this.checkpoint = new IndexCheckpoint(new File(directory, CHECKPOINT_NAME));
+    }
+
+    /**
+     * Unlocks the index and reads its checkpoint. Entries that have only
+     * partially been written are cut off. An index without a checkpoint, as
+     * written by earlier versions, is scanned once to create it.
+     *
+     * @param cryptor The cryptor to encrypt the entries and to derive the file
+     * names with.
+     */
+    public synchronized void open(StorageCryptor cryptor) {
+        directory.mkdirs();
+        this.cryptor = cryptor;
+        truncateIncompleteEntries();
+        checkpoint.read(cryptor);
+
+        if (checkpoint.getLastSequence() < 0) {
+            createCheckpoint();
+        }
+    }
+
+    public synchronized void close() {
+        cryptor = null;
+        checkpoint.reset();
+    }
+
+    public boolean isOpen() {
+        return cryptor != null;
+    }
+
+    private void truncateIncompleteEntries() {
+        for (File file : listIndexFiles()) {
+            if (!file.getName().endsWith(INDEX_SUFFIX)) {
+                continue;
+            }
+
+            long validLength = file.length() - file.length() % RECORD_SIZE;
+
+            if (validLength != file.length()) {
+                try (FileChannel channel = FileChannel.open(file.toPath(), WRITE)) {
+                    channel.truncate(validLength);
+                } catch (IOException ex) {
+                    throw new IllegalStateException("Could not repair the history index: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    private File[] listIndexFiles() {
+        File[] files = directory.listFiles();
+        return files != null ? files : new File[0];
+    }
+
+    /**
+     * Adds the given entry to the index of its conversation, and then
+     * remembers it in the checkpoint.
+     *
+     * @param entry The entry, as appended to the {@link HistoryLog}.
+     */
+    public synchronized void add(HistoryEntry entry) {
+        ByteBuffer plaintext = ByteBuffer.allocate(ENTRY_SIZE);
+        plaintext.putLong(entry.getSequence()).putLong(entry.getPosition());
+        ByteBuffer buffer = ByteBuffer.wrap(getCryptor().encrypt(plaintext.array()));
+
+        try (FileChannel channel = FileChannel.open(getIndexFile(entry.getContact()).toPath(), CREATE, WRITE, APPEND)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+            channel.force(false);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not index the message: " + ex.getMessage());
+        }
+
+        checkpoint.write(getCryptor(), entry.getSequence(), entry.getPosition());
+    }
+
+    /**
+     * Adds the given entry unless the index of its conversation already ends
+     * with it. This is the case when the application was stopped after
+     * adding the entry, but before the checkpoint was written.
+     *
+     * @param entry The entry, as appended to the {@link HistoryLog}, and not
+     * covered by the checkpoint.
+     */
+    public synchronized void addMissing(HistoryEntry entry) {
+        ByteBuffer lastEntry = readLastEntry(getIndexFile(entry.getContact()));
+
+        if (lastEntry != null && lastEntry.getLong(0) >= entry.getSequence()) {
+            checkpoint.write(getCryptor(), entry.getSequence(), entry.getPosition());
+        } else {
+            add(entry);
+        }
+    }
+
+    /**
+     * @param contact The fingerprint of the contact.
+     * @return The number of messages exchanged with this contact.
+     */
+    public long count(String contact) {
+        return getIndexFile(contact).length() / RECORD_SIZE;
+    }
+
+    /**
+     * Reads the positions of a range of messages of one conversation.
+     *
+     * @param contact The fingerprint of the contact.
+     * @param from The number of the first message within the conversation,
+     * starting at zero.
+     * @param count The maximal number of positions to read.
+     * @return The positions in the {@link HistoryLog}, oldest first. This is
+     * shorter than {@code count} when the conversation ends earlier.
+     */
+    public long[] readPositions(String contact, long from, int count) {
+        File file = getIndexFile(contact);
+        long available = Math.max(0, Math.min(count, file.length() / RECORD_SIZE - from));
+
+        if (from < 0 || available == 0) {
+            return new long[0];
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) available * RECORD_SIZE);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+            while (buffer.hasRemaining() && channel.read(buffer, from * RECORD_SIZE + buffer.position()) >= 0) {
+                // Read until the buffer is full.
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not read the history index: " + ex.getMessage());
+        }
+
+        long[] positions = new long[(int) available];
+
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = decryptEntry(buffer.array(), i * RECORD_SIZE).getLong(8);
+        }
+
+        return positions;
+    }
+
+    /**
+     * @return The position of the last indexed message, as remembered by the
+     * checkpoint, or {@link HistoryLog#NO_POSITION} if nothing is indexed.
+     */
+    public synchronized long getLastIndexedPosition() {
+        getCryptor();
+        return checkpoint.getLastPosition();
+    }
+
+    /**
+     * Finds the last indexed message by reading the last entry of every
+     * conversation, and writes the checkpoint for it.
+     */
+    private void createCheckpoint() {
+        long lastSequence = -1;
+        long lastPosition = NO_POSITION;
+
+        for (File file : listIndexFiles()) {
+            if (!file.getName().endsWith(INDEX_SUFFIX)) {
+                continue;
+            }
+
+            ByteBuffer entry = readLastEntry(file);
+
+            if (entry != null && entry.getLong(0) > lastSequence) {
+                lastSequence = entry.getLong(0);
+                lastPosition = entry.getLong(8);
+            }
+        }
+
+        if (lastSequence >= 0) {
+            checkpoint.write(getCryptor(), lastSequence, lastPosition);
+        }
+    }
+
+    private ByteBuffer readLastEntry(File file) {
+        long length = file.length();
+
+        if (length < RECORD_SIZE) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+            while (buffer.hasRemaining() && channel.read(buffer, length - length % RECORD_SIZE - RECORD_SIZE + buffer.position()) >= 0) {
+                // Read until the buffer is full.
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not read the history index: " + ex.getMessage());
+        }
+
+        return decryptEntry(buffer.array(), 0);
+    }
+
+    private ByteBuffer decryptEntry(byte[] records, int offset) {
+        try {
+            return ByteBuffer.wrap(getCryptor().decrypt(Arrays.copyOfRange(records, offset, offset + RECORD_SIZE)));
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalStateException("Could not decrypt the history index: " + ex.getMessage());
+        }
+    }
+
+    private File getIndexFile(String contact) {
+        return new File(directory, getCryptor().deriveName(contact) + INDEX_SUFFIX);
+    }
+
+    private StorageCryptor getCryptor() {
+        StorageCryptor currentCryptor = cryptor;
+
+        if (currentCryptor == null) {
+            throw new IllegalStateException("The history index is locked.");
+        }
+
+        return currentCryptor;
+    }
+
+}
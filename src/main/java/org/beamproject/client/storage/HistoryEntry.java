@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.storage;
+
+import lombok.Getter;
+
+/**
+ * One message of the chat history, as stored in the {@link HistoryLog}.
+ */
+@Getter
+public class HistoryEntry {
+
+    /**
+     * The number of this entry, counting all entries of the log, starting at
+     * zero.
+     */
+    private final long sequence;
+    /**
+     * Where this entry is stored in the {@link HistoryLog}.
+     */
+    private final long position;
+    /**
+     * The time the message has been sent or received, in milliseconds since
+     * the epoch.
+     */
+    private final long timestamp;
+    /**
+     * The fingerprint of the contact this message has been exchanged with.
+     */
+    private final String contact;
+    private final boolean isIncoming;
+    private final String text;
+
+    public HistoryEntry(long sequence, long position, long timestamp, String contact, boolean isIncoming, String text) {
+        this.sequence = sequence;
+        this.position = position;
+        this.timestamp = timestamp;
+        this.contact = contact;
+        this.isIncoming = isIncoming;
+        this.text = text;
+    }
+
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import java.nio.charset.StandardCharsets;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stores the chat history as an append-only log of encrypted records, split
+ * into segment files of a fixed maximal size.
+ * <p>
+ * Appending writes one record at the end of the current segment, or starts a
+ * new segment when the record does not fit anymore. Existing files are never
+ * rewritten. Records are read through memory-mapped segments.
+ * <p>
+ * Every record is addressed by its position: the number of its segment times
+ * the segment size, plus its offset within the segment.
+ */
+public class HistoryLog {
+
+    public final static String LABEL = "history";
+    public final static int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+    /**
+     * A position that never refers to a record.
+     */
+    public final static long NO_POSITION = -1;
+    private final static String SEGMENT_SUFFIX = ".segment";
+    private final static int LENGTH_PREFIX_SIZE = 4;
+    private final File directory;
+    private final int segmentSize;
+    private final Map<Integer, MappedByteBuffer> mappedSegments = new HashMap<>();
+    private volatile StorageCryptor cryptor;
+    private FileChannel appendChannel;
+    private int currentSegment;
+    private long currentSegmentLength;
+    private long nextSequence;
+
+    public HistoryLog(File directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    HistoryLog(File directory, int segmentSize) {
+        if (segmentSize <= LENGTH_PREFIX_SIZE + StorageCryptor.OVERHEAD) {
+            throw new IllegalArgumentException("The segment size is too small.");
+        }
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Unlocks the log with the given cryptor. This finds the end of the last
+     * segment and cuts off a record that has only partially been written.
+     *
+     * @param cryptor The cryptor for the records of this log.
+     * @throws IllegalStateException If the log could not be read or
+     * decrypted.
+     */
+    public synchronized void open(StorageCryptor cryptor) {
+        close();
+        directory.mkdirs();
+        this.cryptor = cryptor;
+        currentSegment = findLastSegment();
+        currentSegmentLength = findValidLength(currentSegment);
+        truncate(currentSegment, currentSegmentLength);
+        nextSequence = readLastSequence() + 1;
+    }
+
+    /**
+     * Locks the log and releases its files.
+     */
+    public synchronized void close() {
+        closeAppendChannel();
+        mappedSegments.clear();
+        cryptor = null;
+    }
+
+    public boolean isOpen() {
+        return cryptor != null;
+    }
+
+    private int findLastSegment() {
+        int lastSegment = 0;
+        String[] names = directory.list();
+
+        for (String name : names != null ? names : new String[0]) {
+            if (name.endsWith(SEGMENT_SUFFIX)) {
+                try {
+                    int segment = Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                    lastSegment = Math.max(lastSegment, segment);
+                } catch (NumberFormatException ex) {
+                    // Not a segment of this log.
+                }
+            }
+        }
+
+        return lastSegment;
+    }
+
+    /**
+     * Walks the length prefixes of the given segment, without decrypting any
+     * record, to find where the last complete record ends.
+     */
+    private long findValidLength(int segment) {
+        File file = getSegmentFile(segment);
+
+        if (!file.exists()) {
+            return 0;
+        }
+
+        long fileLength = file.length();
+        long offset = 0;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+            ByteBuffer prefix = ByteBuffer.allocate(LENGTH_PREFIX_SIZE);
+
+            while (offset + LENGTH_PREFIX_SIZE <= fileLength) {
+                prefix.clear();
+                channel.read(prefix, offset);
+                int length = prefix.getInt(0);
+
+                if (length < StorageCryptor.OVERHEAD || offset + LENGTH_PREFIX_SIZE + length > fileLength) {
+                    break;
+                }
+
+                offset += LENGTH_PREFIX_SIZE + length;
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not read the history: " + ex.getMessage());
+        }
+
+        return offset;
+    }
+
+    private void truncate(int segment, long validLength) {
+        File file = getSegmentFile(segment);
+
+        if (!file.exists() || file.length() == validLength) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), WRITE)) {
+            channel.truncate(validLength);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not repair the history: " + ex.getMessage());
+        }
+    }
+
+    private long readLastSequence() {
+        for (int segment = currentSegment; segment >= 0; segment--) {
+            long validLength = segment == currentSegment ? currentSegmentLength : findValidLength(segment);
+            long lastPosition = NO_POSITION;
+
+            for (long offset = 0; offset < validLength; offset = nextOffset(segment, offset)) {
+                lastPosition = toPosition(segment, offset);
+            }
+
+            if (lastPosition != NO_POSITION) {
+                return read(lastPosition).getSequence();
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Encrypts the given message and appends it to the log.
+     *
+     * @param timestamp The time the message has been sent or received.
+     * @param contact The fingerprint of the contact.
+     * @param isIncoming true if the message has been received, false if it
+     * has been sent.
+     * @param text The text of the message.
+     * @return The stored entry, including its sequence number and position.
+     * @throws IllegalStateException If the log is not open or the record
+     * could not be written.
+     */
+    public synchronized HistoryEntry append(long timestamp, String contact, boolean isIncoming, String text) {
+        verifyOpen();
+
+        long sequence = nextSequence;
+        byte[] record = cryptor.encrypt(serialize(sequence, timestamp, contact, isIncoming, text));
+        int recordSize = LENGTH_PREFIX_SIZE + record.length;
+
+        if (currentSegmentLength > 0 && currentSegmentLength + recordSize > segmentSize) {
+            startNextSegment();
+        }
+
+        long position = toPosition(currentSegment, currentSegmentLength);
+        write(record);
+        currentSegmentLength += recordSize;
+        nextSequence++;
+
+        return new HistoryEntry(sequence, position, timestamp, contact, isIncoming, text);
+    }
+
+    private void startNextSegment() {
+        closeAppendChannel();
+        currentSegment++;
+        currentSegmentLength = 0;
+    }
+
+    private void write(byte[] record) {
+        ByteBuffer buffer = ByteBuffer.allocate(LENGTH_PREFIX_SIZE + record.length);
+        buffer.putInt(record.length).put(record).flip();
+
+        try {
+            if (appendChannel == null) {
+                appendChannel = FileChannel.open(getSegmentFile(currentSegment).toPath(), CREATE, WRITE, APPEND);
+            }
+
+            while (buffer.hasRemaining()) {
+                appendChannel.write(buffer);
+            }
+
+            appendChannel.force(false);
+        } catch (IOException ex) {
+            closeAppendChannel();
+            throw new IllegalStateException("Could not store the message: " + ex.getMessage());
+        }
+    }
+
+    private void closeAppendChannel() {
+        if (appendChannel == null) {
+            return;
+        }
+
+        try {
+            appendChannel.close();
+        } catch (IOException ex) {
+            // The data has already been forced to disk.
+        } finally {
+            appendChannel = null;
+        }
+    }
+
+    /**
+     * Reads and decrypts the entry at the given position.
+     *
+     * @param position The position, as returned by {@link HistoryEntry#getPosition()}.
+     * @return The entry.
+     * @throws IllegalArgumentException If there is no record at this position.
+     * @throws IllegalStateException If the log is not open.
+     */
+    public HistoryEntry read(long position) {
+        verifyOpen();
+        ByteBuffer segment = mapRecord(toSegment(position), toOffset(position));
+        int offset = toOffset(position);
+        int length = segment.getInt(offset);
+        byte[] record = new byte[length];
+
+        segment.position(offset + LENGTH_PREFIX_SIZE);
+        segment.get(record);
+
+        return deserialize(position, cryptor.decrypt(record));
+    }
+
+    /**
+     * Finds the position of the entry following the one at the given
+     * position. This only reads the length of the record, it does not decrypt
+     * it.
+     *
+     * @param position The position of an entry.
+     * @return The position of the next entry, or {@link #NO_POSITION} if the
+     * given entry is the last one.
+     */
+    public long nextPosition(long position) {
+        verifyOpen();
+        int segment = toSegment(position);
+        long offset = nextOffset(segment, toOffset(position));
+
+        if (offset < getSegmentLength(segment)) {
+            return toPosition(segment, offset);
+        }
+
+        boolean hasNextSegment = segment < getCurrentSegment() && getSegmentLength(segment + 1) > 0;
+        return hasNextSegment ? toPosition(segment + 1, 0) : NO_POSITION;
+    }
+
+    /**
+     * @return The position of the first entry, or {@link #NO_POSITION} if the
+     * log is empty.
+     */
+    public long getFirstPosition() {
+        verifyOpen();
+
+        for (int segment = 0; segment <= getCurrentSegment(); segment++) {
+            if (getSegmentLength(segment) > 0) {
+                return toPosition(segment, 0);
+            }
+        }
+
+        return NO_POSITION;
+    }
+
+    /**
+     * @return The sequence number the next appended entry will get, which is
+     * also the number of entries ever appended.
+     */
+    public synchronized long getNextSequence() {
+        return nextSequence;
+    }
+
+    private long nextOffset(int segment, long offset) {
+        return offset + LENGTH_PREFIX_SIZE + mapRecord(segment, (int) offset).getInt((int) offset);
+    }
+
+    private synchronized int getCurrentSegment() {
+        return currentSegment;
+    }
+
+    private synchronized long getSegmentLength(int segment) {
+        return segment == currentSegment ? currentSegmentLength : getSegmentFile(segment).length();
+    }
+
+    /**
+     * Returns a view of the mapped segment that contains at least the record
+     * at the given offset. The segment being appended to is mapped again when
+     * it has grown past the mapped region.
+     */
+    private synchronized ByteBuffer mapRecord(int segment, int offset) {
+        MappedByteBuffer mapped = mappedSegments.get(segment);
+
+        if (mapped == null || !containsRecord(mapped, offset)) {
+            mapped = mapSegment(segment);
+            mappedSegments.put(segment, mapped);
+
+            if (!containsRecord(mapped, offset)) {
+                throw new IllegalArgumentException("There is no record at this position.");
+            }
+        }
+
+        return mapped.duplicate();
+    }
+
+    private boolean containsRecord(ByteBuffer mapped, int offset) {
+        return offset >= 0
+                && offset + LENGTH_PREFIX_SIZE <= mapped.limit()
+                && mapped.getInt(offset) >= StorageCryptor.OVERHEAD
+                && offset + LENGTH_PREFIX_SIZE + (long) mapped.getInt(offset) <= mapped.limit();
+    }
+
+    private MappedByteBuffer mapSegment(int segment) {
+        File file = getSegmentFile(segment);
+
+        if (!file.exists()) {
+            throw new IllegalArgumentException("There is no record at this position.");
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+            return channel.map(READ_ONLY, 0, getSegmentLength(segment));
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not read the history: " + ex.getMessage());
+        }
+    }
+
+    private File getSegmentFile(int segment) {
+        return new File(directory, String.format("%08d", segment) + SEGMENT_SUFFIX);
+    }
+
+    private long toPosition(int segment, long offset) {
+        return (long) segment * segmentSize + offset;
+    }
+
+    private int toSegment(long position) {
+        return (int) (position / segmentSize);
+    }
+
+    private int toOffset(long position) {
+        return (int) (position % segmentSize);
+    }
+
+    private void verifyOpen() {
+        if (cryptor == null) {
+            throw new IllegalStateException("The history is locked.");
+        }
+    }
+
+    private byte[] serialize(long sequence, long timestamp, String contact, boolean isIncoming, String text) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+            output.writeLong(sequence);
+            output.writeLong(timestamp);
+            output.writeUTF(contact);
+            output.writeBoolean(isIncoming);
+            output.writeInt(textBytes.length);
+            output.write(textBytes);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not serialize the message: " + ex.getMessage());
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private HistoryEntry deserialize(long position, byte[] plaintext) {
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(plaintext))) {
+            long sequence = input.readLong();
+            long timestamp = input.readLong();
+            String contact = input.readUTF();
+            boolean isIncoming = input.readBoolean();
+            byte[] textBytes = new byte[input.readInt()];
+            input.readFully(textBytes);
+
+            return new HistoryEntry(sequence, position, timestamp, contact, isIncoming, new String(textBytes, StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not deserialize the message: " + ex.getMessage());
+        }
+    }
+
+}
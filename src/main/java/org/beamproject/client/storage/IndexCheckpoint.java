@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.beamproject.client.storage.HistoryLog.NO_POSITION;
+
+/**
+ * Remembers the last message an index has processed, so opening the index
+ * does not require to read the index itself.
+ * <p>
+ * The file holds two encrypted slots that are written in turn. A write that
+ * is interrupted damages only one of them, while the other one still holds
+ * the checkpoint before.
+ */
+class IndexCheckpoint {
+
+    private final static int ENTRY_SIZE = 16;
+    private final static int RECORD_SIZE = ENTRY_SIZE + StorageCryptor.OVERHEAD;
+    private final static int SLOT_COUNT = 2;
+    private final File file;
+    private long lastSequence = -1;
+    private long lastPosition = NO_POSITION;
+    private int nextSlot = 0;
+
+    IndexCheckpoint(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the checkpoint. Slots that are missing, incomplete, or cannot be
+     * authenticated are ignored, so nothing is remembered in the worst case.
+     *
+     * @param cryptor The cryptor of the index.
+     */
+    void read(StorageCryptor cryptor) {
+        reset();
+
+        if (!file.exists()) {
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(SLOT_COUNT * RECORD_SIZE);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+            while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+                // Read until the buffer is full.
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not read the index checkpoint: " + ex.getMessage());
+        }
+
+        for (int slot = 0; slot < SLOT_COUNT && (slot + 1) * RECORD_SIZE <= buffer.position(); slot++) {
+            ByteBuffer entry = decryptSlot(cryptor, buffer.array(), slot);
+
+            if (entry != null && entry.getLong(0) > lastSequence) {
+                lastSequence = entry.getLong(0);
+                lastPosition = entry.getLong(8);
+                nextSlot = (slot + 1) % SLOT_COUNT;
+            }
+        }
+    }
+
+    private ByteBuffer decryptSlot(StorageCryptor cryptor, byte[] slots, int slot) {
+        try {
+            int offset = slot * RECORD_SIZE;
+            return ByteBuffer.wrap(cryptor.decrypt(Arrays.copyOfRange(slots, offset, offset + RECORD_SIZE)));
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Stores the given message as the last one processed.
+     *
+     * @param cryptor The cryptor of the index.
+     * @param sequence The sequence number of the message.
+     * @param position The position of the message in the {@link HistoryLog}.
+     */
+    void write(StorageCryptor cryptor, long sequence, long position) {
+        ByteBuffer plaintext = ByteBuffer.allocate(ENTRY_SIZE);
+        plaintext.putLong(sequence).putLong(position);
+        ByteBuffer buffer = ByteBuffer.wrap(cryptor.encrypt(plaintext.array()));
+        long offset = nextSlot * RECORD_SIZE;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), CREATE, WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, offset + buffer.position());
+            }
+
+            channel.force(false);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not write the index checkpoint: " + ex.getMessage());
+        }
+
+        lastSequence = sequence;
+        lastPosition = position;
+        nextSlot = (nextSlot + 1) % SLOT_COUNT;
+    }
+
+    /**
+     * Forgets the checkpoint read or written last.
+     */
+    void reset() {
+        lastSequence = -1;
+        lastPosition = NO_POSITION;
+        nextSlot = 0;
+    }
+
+    /**
+     * @return The sequence number of the last processed message, or -1.
+     */
+    long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * @return The position of the last processed message, or
+     * {@link HistoryLog#NO_POSITION}.
+     */
+    long getLastPosition() {
+        return lastPosition;
+    }
+
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A full-text index over the {@link HistoryLog}. Every term maps to the
+ * positions of the messages containing it, so a search only intersects a few
+ * lists instead of decrypting every message.
+ * <p>
+ * On disk, every term has its own posting list: a file of fixed-size
+ * entries, each holding the position of one message, encrypted on its own.
+ * The file names are derived from the terms with a keyed hash. Opening the
+ * index only reads its {@link IndexCheckpoint}. A search decrypts the
+ * shortest list of the queried terms and looks up its positions in the other
+ * lists by binary search, so only a few entries of those are decrypted.
+ */
+public class SearchIndex {
+
+    public final static String LABEL = "search-index";
+    private final static String POSTINGS_SUFFIX = ".postings";
+    private final static String CHECKPOINT_NAME = "checkpoint";
+    private final static int ENTRY_SIZE = 8;
+    private final static int RECORD_SIZE = ENTRY_SIZE + StorageCryptor.OVERHEAD;
+    private final File directory;
+    private final IndexCheckpoint checkpoint;
+    private volatile StorageCryptor cryptor;
+
+    public SearchIndex(File directory) {
+        this.directory = directory;
+        this.checkpoint = new IndexCheckpoint(new File(directory, CHECKPOINT_NAME));
+    }
+
+    /**
+     * Unlocks the index and reads its checkpoint. No posting list is read.
+     *
+     * @param cryptor The cryptor for the entries and file names of this index.
+     * @throws IllegalStateException If the checkpoint could not be read.
+     */
+    public synchronized void open(StorageCryptor cryptor) {
+        directory.mkdirs();
+        checkpoint.read(cryptor);
+        this.cryptor = cryptor;
+    }
+
+    /**
+     * Locks the index.
+     */
+    public synchronized void close() {
+        cryptor = null;
+        checkpoint.reset();
+    }
+
+    public boolean isOpen() {
+        return cryptor != null;
+    }
+
+    /**
+     * Indexes the terms of the given entry. The posting lists are written
+     * before the checkpoint, so an interrupted call is repeated when the
+     * index is opened next. The repeated positions are skipped on reading.
+     *
+     * @param entry The entry, as appended to the {@link HistoryLog}.
+     */
+    public synchronized void add(HistoryEntry entry) {
+        StorageCryptor currentCryptor = getCryptor();
+        ByteBuffer plaintext = ByteBuffer.allocate(ENTRY_SIZE);
+        plaintext.putLong(entry.getPosition());
+
+        for (String term : tokenize(entry.getText())) {
+            append(getPostingsFile(term), currentCryptor.encrypt(plaintext.array()));
+        }
+
+        checkpoint.write(currentCryptor, entry.getSequence(), entry.getPosition());
+    }
+
+    /**
+     * Appends the given record. An entry that has only partially been
+     * written before is cut off first.
+     */
+    private void append(File file, byte[] record) {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), CREATE, WRITE)) {
+            long validLength = channel.size() - channel.size() % RECORD_SIZE;
+            channel.truncate(validLength);
+
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, validLength + buffer.position());
+            }
+
+            channel.force(false);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not index the message: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Searches the messages containing all terms of the given query.
+     *
+     * @param query The words to search, separated by whitespace or
+     * punctuation. The case is ignored.
+     * @param maximalResults The maximal number of results.
+     * @return The positions of the matching messages in the
+     * {@link HistoryLog}, newest first.
+     */
+    public synchronized List<Long> search(String query, int maximalResults) {
+        getCryptor();
+        List<PostingList> lists = new ArrayList<>();
+
+        try {
+            for (String term : tokenize(query)) {
+                File file = getPostingsFile(term);
+
+                if (file.length() < RECORD_SIZE) {
+                    return Collections.emptyList();
+                }
+
+                lists.add(new PostingList(file));
+            }
+
+            if (lists.isEmpty()) {
+                return Collections.emptyList();
+            }
+
+            Collections.sort(lists, new Comparator<PostingList>() {
+                @Override
+                public int compare(PostingList first, PostingList second) {
+                    return Long.compare(first.size(), second.size());
+                }
+            });
+
+            return intersectFromNewest(lists, maximalResults);
+        } finally {
+            for (PostingList list : lists) {
+                list.close();
+            }
+        }
+    }
+
+    /**
+     * Walks the shortest list from its end and keeps the positions contained
+     * in all other lists. The lists are sorted, since positions only grow
+     * while messages are appended.
+     */
+    private List<Long> intersectFromNewest(List<PostingList> lists, int maximalResults) {
+        List<Long> results = new ArrayList<>();
+        PostingList shortest = lists.get(0);
+        long previousPosition = Long.MAX_VALUE;
+
+        for (long i = shortest.size() - 1; i >= 0 && results.size() < maximalResults; i--) {
+            long position = shortest.get(i);
+
+            if (position < previousPosition && isContainedInAll(position, lists)) {
+                results.add(position);
+            }
+
+            previousPosition = Math.min(previousPosition, position);
+        }
+
+        return results;
+    }
+
+    private boolean isContainedInAll(long position, List<PostingList> lists) {
+        for (int i = 1; i < lists.size(); i++) {
+            if (!lists.get(i).contains(position)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return The position of the last indexed message, or
+     * {@link HistoryLog#NO_POSITION} if nothing is indexed.
+     */
+    public synchronized long getLastIndexedPosition() {
+        getCryptor();
+        return checkpoint.getLastPosition();
+    }
+
+    /**
+     * Splits the given text into lower case words.
+     *
+     * @param text The text.
+     * @return The distinct words, in the order of their first occurrence.
+     */
+    static Set<String> tokenize(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+
+        for (String term : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{Nd}]+")) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+
+        return terms;
+    }
+
+    private File getPostingsFile(String term) {
+        return new File(directory, getCryptor().deriveName(term) + POSTINGS_SUFFIX);
+    }
+
+    private StorageCryptor getCryptor() {
+        StorageCryptor currentCryptor = cryptor;
+
+        if (currentCryptor == null) {
+            throw new IllegalStateException("The search index is locked.");
+        }
+
+        return currentCryptor;
+    }
+
+    /**
+     * The posting list of one term, read and decrypted entry by entry as it
+     * is accessed. An entry that has only partially been written is ignored.
+     */
+    private class PostingList implements Closeable {
+
+        private final FileChannel channel;
+        private final long size;
+        private final Map<Long, Long> positions = new HashMap<>();
+        private final ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+
+        PostingList(File file) {
+            try {
+                channel = FileChannel.open(file.toPath(), READ);
+                size = channel.size() / RECORD_SIZE;
+            } catch (IOException ex) {
+                throw new IllegalStateException("Could not read the search index: " + ex.getMessage());
+            }
+        }
+
+        long size() {
+            return size;
+        }
+
+        /**
+         * @param index The number of the entry, starting at zero.
+         * @return The position held by this entry.
+         */
+        long get(long index) {
+            Long position = positions.get(index);
+
+            if (position == null) {
+                position = read(index);
+                positions.put(index, position);
+            }
+
+            return position;
+        }
+
+        private long read(long index) {
+            buffer.clear();
+
+            try {
+                while (buffer.hasRemaining() && channel.read(buffer, index * RECORD_SIZE + buffer.position()) >= 0) {
+                    // Read until the buffer is full.
+                }
+
+                return ByteBuffer.wrap(getCryptor().decrypt(buffer.array())).getLong();
+            } catch (IOException ex) {
+                throw new IllegalStateException("Could not read the search index: " + ex.getMessage());
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalStateException("Could not decrypt the search index: " + ex.getMessage());
+            }
+        }
+
+        /**
+         * Searches the given position by binary search. Positions repeated
+         * by an interrupted {@link SearchIndex#add(HistoryEntry)} keep the
+         * list sorted.
+         */
+        boolean contains(long position) {
+            long low = 0;
+            long high = size - 1;
+
+            while (low <= high) {
+                long middle = (low + high) >>> 1;
+                long middlePosition = get(middle);
+
+                if (middlePosition < position) {
+                    low = middle + 1;
+                } else if (middlePosition > position) {
+                    high = middle - 1;
+                } else {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public void close() {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                // Nothing has been written.
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.storage;
+
+import com.google.common.io.BaseEncoding;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Encrypts and authenticates the records of the local stores, such as the
+ * contact list or the message history.
+ * <p>
+ * Every store uses its own keys, derived from one master key and the label of
+ * the store. A record is the random IV, the AES-CTR ciphertext and an
+ * HMAC-SHA256 over both.
+ */
+public class StorageCryptor {
+
+    public final static int MASTER_KEY_LENGTH = 32;
+    public final static int OVERHEAD = 16 + 32;
+    public final static int MINIMAL_KDF_ITERATIONS = 1000;
+    public final static int MAXIMAL_KDF_ITERATIONS = 10000000;
+    private final static int CALIBRATION_ITERATIONS = 5000;
+    private final static int CALIBRATION_RUNS = 3;
+    private final static int IV_LENGTH = 16;
+    private final static int AES_KEY_LENGTH = 16;
+    private final static int MAC_LENGTH = 32;
+    private final static int NAME_LENGTH = 16;
+    private final static char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private final static String CIPHER_ALGORITHM = "AES/CTR/NoPadding";
+    private final static String MAC_ALGORITHM = "HmacSHA256";
+    private final static byte[] KEY_CHECK_PURPOSE = "beam-client/key-check".getBytes(StandardCharsets.UTF_8);
+    private final SecretKeySpec encryptionKey;
+    private final SecretKeySpec macKey;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Creates a cryptor for the store of the given label.
+     *
+     * @param masterKey The master key, see {@link #generateMasterKey()}.
+     * @param label The name of the store, for example {@code "contacts"}.
+     */
+    public StorageCryptor(byte[] masterKey, String label) {
+        byte[] encryptionKeyBytes = Arrays.copyOf(deriveSubkey(masterKey, label + "/encryption"), AES_KEY_LENGTH);
+        byte[] macKeyBytes = deriveSubkey(masterKey, label + "/authentication");
+
+        encryptionKey = new SecretKeySpec(encryptionKeyBytes, "AES");
+        macKey = new SecretKeySpec(macKeyBytes, MAC_ALGORITHM);
+    }
+
+    /**
+     * Generates a random master key for the local stores. It is kept in the
+     * encrypted config, so changing the password only re-encrypts the config
+     * and none of the stored data.
+     *
+     * @return The new master key.
+     */
+    public static byte[] generateMasterKey() {
+        byte[] masterKey = new byte[MASTER_KEY_LENGTH];
+        new SecureRandom().nextBytes(masterKey);
+        return masterKey;
+    }
+
+    /**
+     * Stretches the given password with PBKDF2. The result is used as the
+     * password of the encrypted config, so that unlocking costs the calibrated
+     * derivation on top of the fixed one of the encrypted config.
+     *
+     * @param password The password of the user.
+     * @param salt The salt, as stored in the config.
+     * @param iterations The PBKDF2 iterations, see
+     * {@link #calibrateIterations(long)}.
+     * @return The stretched password, hex encoded.
+     * @throws IllegalArgumentException If the iterations are out of range.
+     */
+    public static char[] stretchPassword(char[] password, byte[] salt, int iterations) {
+        if (iterations < MINIMAL_KDF_ITERATIONS || iterations > MAXIMAL_KDF_ITERATIONS) {
+            throw new IllegalArgumentException("The KDF iterations are out of range: " + iterations);
+        }
+
+        byte[] key = deriveKey(password, salt, iterations);
+        char[] stretchedPassword = new char[key.length * 2];
+
+        for (int i = 0; i < key.length; i++) {
+            stretchedPassword[2 * i] = HEX_DIGITS[(key[i] >> 4) & 0xf];
+            stretchedPassword[2 * i + 1] = HEX_DIGITS[key[i] & 0xf];
+        }
+
+        Arrays.fill(key, (byte) 0);
+        return stretchedPassword;
+    }
+
+    /**
+     * Computes a value that is stored next to the encrypted config, so a
+     * wrong stretched password is recognized by a single HMAC instead of
+     * another key derivation when the encrypted config is opened.
+     *
+     * @param stretchedPassword The password, as returned by
+     * {@link #stretchPassword(char[], byte[], int)}.
+     * @return The HMAC-SHA256 of a constant, keyed with the password.
+     */
+    public static byte[] computeKeyCheck(char[] stretchedPassword) {
+        byte[] key = new byte[stretchedPassword.length];
+
+        for (int i = 0; i < key.length; i++) {
+            key[i] = (byte) stretchedPassword[i];
+        }
+
+        byte[] keyCheck = hmac(key, KEY_CHECK_PURPOSE);
+        Arrays.fill(key, (byte) 0);
+        return keyCheck;
+    }
+
+    private static byte[] deriveKey(char[] password, byte[] salt, int iterations) {
+        try {
+            PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, MASTER_KEY_LENGTH * 8);
+            SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
+            return factory.generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Could not derive the key: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Measures the PBKDF2 speed of this machine and computes the iterations
+     * needed for {@link #stretchPassword(char[], byte[], int)} to take the
+     * given time. The result is at least {@value #MINIMAL_KDF_ITERATIONS}.
+     *
+     * @param targetMillis The wanted duration of the stretching.
+     * @return The number of iterations.
+     */
+    public static int calibrateIterations(long targetMillis) {
+        char[] password = "calibration".toCharArray();
+        byte[] salt = new byte[16];
+        long fastestNanos = Long.MAX_VALUE;
+
+        for (int run = 0; run < CALIBRATION_RUNS; run++) {
+            long start = System.nanoTime();
+            deriveKey(password, salt, CALIBRATION_ITERATIONS);
+            fastestNanos = Math.min(fastestNanos, System.nanoTime() - start);
+        }
+
+        long iterations = CALIBRATION_ITERATIONS * MILLISECONDS.toNanos(targetMillis) / Math.max(1, fastestNanos);
+        return (int) Math.max(MINIMAL_KDF_ITERATIONS, Math.min(MAXIMAL_KDF_ITERATIONS, iterations));
+    }
+
+    /**
+     * Computes a keyed hash of the given data with the given key. This is
+     * used to derive keys and to build identifiers that do not reveal the data.
+     *
+     * @param key The key.
+     * @param data The data to hash.
+     * @return The HMAC-SHA256 of the data.
+     */
+    public static byte[] hmac(byte[] key, byte[] data) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(key, MAC_ALGORITHM));
+            return mac.doFinal(data);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Could not compute the HMAC: " + ex.getMessage());
+        }
+    }
+
+    private static byte[] deriveSubkey(byte[] masterKey, String purpose) {
+        return hmac(masterKey, purpose.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Encrypts the given plaintext into a new record.
+     *
+     * @param plaintext The data to encrypt.
+     * @return The record, {@link #OVERHEAD} bytes longer than the plaintext.
+     */
+    public byte[] encrypt(byte[] plaintext) {
+        byte[] record = new byte[IV_LENGTH + plaintext.length + MAC_LENGTH];
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+
+        try {
+            Cipher cipher = Cipher.getInstance(CIPHER_ALGORITHM);
+            cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new IvParameterSpec(iv));
+            System.arraycopy(iv, 0, record, 0, IV_LENGTH);
+            cipher.doFinal(plaintext, 0, plaintext.length, record, IV_LENGTH);
+
+            Mac mac = initMac();
+            mac.update(record, 0, IV_LENGTH + plaintext.length);
+            mac.doFinal(record, IV_LENGTH + plaintext.length);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Could not encrypt the record: " + ex.getMessage());
+        }
+
+        return record;
+    }
+
+    /**
+     * Verifies and decrypts the given record.
+     *
+     * @param record The record, as produced by {@link #encrypt(byte[])}.
+     * @return The plaintext.
+     * @throws IllegalArgumentException If the record is too short, has been
+     * modified or was encrypted with another key.
+     */
+    public byte[] decrypt(byte[] record) {
+        if (record.length < OVERHEAD) {
+            throw new IllegalArgumentException("The record is too short.");
+        }
+
+        int ciphertextLength = record.length - OVERHEAD;
+
+        try {
+            Mac mac = initMac();
+            mac.update(record, 0, IV_LENGTH + ciphertextLength);
+            byte[] expectedMac = mac.doFinal();
+            byte[] actualMac = Arrays.copyOfRange(record, IV_LENGTH + ciphertextLength, record.length);
+
+            if (!MessageDigest.isEqual(expectedMac, actualMac)) {
+                throw new IllegalArgumentException("The record could not be authenticated.");
+            }
+
+            Cipher cipher = Cipher.getInstance(CIPHER_ALGORITHM);
+            cipher.init(Cipher.DECRYPT_MODE, encryptionKey, new IvParameterSpec(record, 0, IV_LENGTH));
+            return cipher.doFinal(record, IV_LENGTH, ciphertextLength);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Could not decrypt the record: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Derives a name, such as a file name, from the given value without
+     * revealing the value. The same value always results in the same name.
+     *
+     * @param value The value, for example the fingerprint of a contact.
+     * @return A hex encoded, keyed hash of the value.
+     */
+    public String deriveName(String value) {
+        try {
+            byte[] hash = initMac().doFinal(("name/" + value).getBytes(StandardCharsets.UTF_8));
+            return BaseEncoding.base16().lowerCase().encode(hash, 0, NAME_LENGTH);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Could not derive the name: " + ex.getMessage());
+        }
+    }
+
+    private Mac initMac() throws GeneralSecurityException {
+        Mac mac = Mac.getInstance(MAC_ALGORITHM);
+        mac.init(macKey);
+        return mac;
+    }
+
+}
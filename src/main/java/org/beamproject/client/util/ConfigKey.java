@@ -67,5 +67,26 @@ public enum ConfigKey {
      * Defines of what sources/senders messages will be accepted.<br />
      * Allowed values are the values of {@link MenuModel.AcceptedMessageSender}.
      */
-    ACCEPTED_MESSAGE_SENDER
+    ACCEPTED_MESSAGE_SENDER,
+    /**
+     * The random key encrypting the locally stored contacts and messages. It
+     * is only stored in the encrypted config, so a password change does not
+     * require to re-encrypt the stored data.
+     */
+    DATA_KEY,
+    /**
+     * The number of PBKDF2 iterations the password is stretched with before
+     * it unlocks the encrypted config. They are calibrated to this machine
+     * when the config is created. Configs created before have no value and
+     * use the password as it is.
+     */
+    KDF_ITERATIONS,
+    /**
+     * The HMAC of a constant, keyed with the stretched password. It is stored
+     * unencrypted in the file of the encrypted config, so it is replaced
+     * together with the encrypted entries, and lets a wrong password be
+     * rejected before the encrypted config is decrypted. Only written when
+     * {@link #KDF_ITERATIONS} are set.
+     */
+    KEY_CHECK
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.util;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import static java.nio.file.Files.move;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import org.beamproject.common.util.Files;
+
+/**
+ * Writes configurations to disk, but only when they have changed since they
+ * were last written or read. A file is first written next to its target and
+ * then moved over it, so that a crash while writing never leaves a corrupt
+ * configuration behind.
+ */
+public class ConfigPersister {
+
+    public final static String TEMPORARY_SUFFIX = ".tmp";
+    private final Files files;
+    private final Map<String, Properties> snapshots = new HashMap<>();
+
+    public ConfigPersister(Files files) {
+        this.files = files;
+    }
+
+    /**
+     * Remembers the given properties as the content of the file, for example
+     * after reading it, so that storing them unchanged does not write.
+     *
+     * @param properties The current content of the file.
+     * @param path The path of the file.
+     */
+    public synchronized void remember(Properties properties, String path) {
+        snapshots.put(path, copy(properties));
+    }
+
+    /**
+     * Stores the given properties, unless they equal what has last been
+     * stored at this path.
+     *
+     * @param properties The properties to store.
+     * @param path The path of the file.
+     * @return true if the file has been written, false if nothing changed.
+     */
+    public synchronized boolean store(Properties properties, String path) {
+        Properties snapshot = snapshots.get(path);
+
+        if (snapshot != null && findChangedKeys(snapshot, properties).isEmpty()) {
+            return false;
+        }
+
+        String temporaryPath = path + TEMPORARY_SUFFIX;
+        files.storeProperies(properties, temporaryPath);
+        replace(Paths.get(temporaryPath), Paths.get(path));
+        snapshots.put(path, copy(properties));
+        return true;
+    }
+
+    /**
+     * Moves the source over the target, atomically if the file system
+     * supports it.
+     *
+     * @param source The newly written file.
+     * @param target The file to replace.
+     */
+    protected void replace(Path source, Path target) {
+        try {
+            try {
+                move(source, target, ATOMIC_MOVE, REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                move(source, target, REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not replace the configuration: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Compares two versions of properties.
+     *
+     * @param before The previous version.
+     * @param after The current version.
+     * @return The keys that have been added, changed or removed.
+     */
+    static Set<String> findChangedKeys(Properties before, Properties after) {
+        Set<String> changedKeys = new HashSet<>();
+
+        for (String key : after.stringPropertyNames()) {
+            if (!after.getProperty(key).equals(before.getProperty(key))) {
+                changedKeys.add(key);
+            }
+        }
+
+        for (String key : before.stringPropertyNames()) {
+            if (after.getProperty(key) == null) {
+                changedKeys.add(key);
+            }
+        }
+
+        return changedKeys;
+    }
+
+    private Properties copy(Properties properties) {
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        return copy;
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.util;
+
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+import org.beamproject.common.util.QrCode;
+
+/**
+ * Caches the QR code images of one address. Requested side lengths are rounded
+ * down to a multiple of the bucket size, so that resizing a window only
+ * encodes a new image when a bucket boundary is crossed. All images are
+ * dropped when the address changes.
+ */
+public class QrCodeCache {
+
+    private final int bucketSize;
+    private final Map<Integer, BufferedImage> images = new HashMap<>();
+    private String address;
+
+    /**
+     * @param bucketSize The granularity of the cached side lengths, in pixel.
+     */
+    public QrCodeCache(int bucketSize) {
+        if (bucketSize < 1) {
+            throw new IllegalArgumentException("The bucket size has to be positive.");
+        }
+
+        this.bucketSize = bucketSize;
+    }
+
+    /**
+     * Returns the QR code of the given address, encoding it only if no image
+     * of the same bucket is cached yet.
+     *
+     * @param address The content of the QR code.
+     * @param sideLength The requested side length in pixel.
+     * @return The cached or newly encoded image, with the side length of the
+     * bucket.
+     */
+    public synchronized BufferedImage get(String address, int sideLength) {
+        if (!address.equals(this.address)) {
+            images.clear();
+            this.address = address;
+        }
+
+        int bucket = toBucket(sideLength);
+        BufferedImage image = images.get(bucket);
+
+        if (image == null) {
+            image = QrCode.encode(address, bucket);
+            images.put(bucket, image);
+        }
+
+        return image;
+    }
+
+    int toBucket(int sideLength) {
+        return Math.max(bucketSize, sideLength - sideLength % bucketSize);
+    }
+
+}
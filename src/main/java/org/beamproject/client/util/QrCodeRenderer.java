@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.util;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
+import org.beamproject.common.util.Executor;
+import org.beamproject.common.util.Task;
+
+/**
+ * Renders QR codes in the background and hands the finished images to the
+ * Event Dispatch Thread. When several sizes are requested while one image is
+ * rendered, only the latest size is rendered next.
+ */
+public class QrCodeRenderer {
+
+    /**
+     * Renders the QR code. This is called in the background.
+     */
+    public interface Source {
+
+        /**
+         * @param sideLength The requested side length in pixel.
+         * @return The rendered image.
+         */
+        BufferedImage render(int sideLength);
+    }
+
+    /**
+     * Shows the rendered QR code. This is called on the Event Dispatch Thread.
+     */
+    public interface Target {
+
+        /**
+         * @param image The rendered image.
+         */
+        void show(BufferedImage image);
+    }
+
+    private final static int NO_REQUEST = Integer.MIN_VALUE;
+    private final Executor executor;
+    private final Source source;
+    private final Target target;
+    private final AtomicInteger requestedSideLength = new AtomicInteger(NO_REQUEST);
+    private final AtomicBoolean isRendering = new AtomicBoolean();
+
+    public QrCodeRenderer(Executor executor, Source source, Target target) {
+        this.executor = executor;
+        this.source = source;
+        this.target = target;
+    }
+
+    /**
+     * Requests a QR code of the given size. This returns immediately; the
+     * image is shown as soon as it is rendered. A request replaces an earlier
+     * one whose rendering has not started yet.
+     *
+     * @param sideLength The requested side length in pixel.
+     */
+    public void request(int sideLength) {
+        requestedSideLength.set(sideLength);
+        startRenderingIfNeeded();
+    }
+
+    private void startRenderingIfNeeded() {
+        if (requestedSideLength.get() != NO_REQUEST && isRendering.compareAndSet(false, true)) {
+            executor.runAsync(new Task() {
+                @Override
+                public void run() {
+                    renderLatestRequests();
+                }
+            });
+        }
+    }
+
+    private void renderLatestRequests() {
+        try {
+            int sideLength;
+
+            while ((sideLength = requestedSideLength.getAndSet(NO_REQUEST)) != NO_REQUEST) {
+                publish(source.render(sideLength));
+            }
+        } finally {
+            isRendering.set(false);
+        }
+
+        startRenderingIfNeeded(); // Catches requests made while stopping.
+    }
+
+    private void publish(final BufferedImage image) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                target.show(image);
+            }
+        });
+    }
+
+}
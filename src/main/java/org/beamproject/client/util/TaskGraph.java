@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs a set of tasks concurrently, each as soon as the tasks it depends on
+ * are completed, and measures how long every task took. Since a task can only
+ * depend on tasks added before it, the graph cannot contain cycles.
+ * <p>
+ * If a task fails, the tasks depending on it are skipped and the failure is
+ * thrown by {@link #run()} once all other tasks are done.
+ */
+public class TaskGraph {
+
+    private final Executor executor;
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+    private final Map<String, Long> durationsInMillis = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    private CountDownLatch remainingNodes;
+
+    /**
+     * @param executor The executor to run the tasks on. It needs as many
+     * threads as tasks should run concurrently.
+     */
+    public TaskGraph(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Adds a task to the graph.
+     *
+     * @param name The unique name of the task.
+     * @param task The task.
+     * @param dependencies The names of the tasks that have to be completed
+     * before this one starts.
+     * @return This graph.
+     * @throws IllegalArgumentException If the name is already used or a
+     * dependency is unknown.
+     */
+    public TaskGraph add(String name, Runnable task, String... dependencies) {
+        if (nodes.containsKey(name)) {
+            throw new IllegalArgumentException("The task " + name + " already exists.");
+        }
+
+        Node node = new Node(name, task, dependencies.length);
+
+        for (String dependency : dependencies) {
+            if (!nodes.containsKey(dependency)) {
+                throw new IllegalArgumentException("The task " + name + " depends on the unknown task " + dependency + ".");
+            }
+
+            nodes.get(dependency).dependents.add(node);
+        }
+
+        nodes.put(name, node);
+        return this;
+    }
+
+    /**
+     * Runs all tasks and waits until they are completed or skipped.
+     *
+     * @throws RuntimeException The first failure of a task, if any.
+     */
+    public void run() {
+        remainingNodes = new CountDownLatch(nodes.size());
+
+        for (Node node : nodes.values()) {
+            if (node.remainingDependencies.get() == 0) {
+                submit(node);
+            }
+        }
+
+        awaitCompletion();
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    private void submit(final Node node) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean isCompleted = false;
+                long start = System.nanoTime();
+
+                try {
+                    node.task.run();
+                    isCompleted = true;
+                } catch (RuntimeException ex) {
+                    failure.compareAndSet(null, ex);
+                } finally {
+                    durationsInMillis.put(node.name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    finish(node, isCompleted);
+                }
+            }
+        });
+    }
+
+    private void finish(Node node, boolean isCompleted) {
+        remainingNodes.countDown();
+
+        for (Node dependent : node.dependents) {
+            if (!isCompleted) {
+                skip(dependent);
+            } else if (dependent.remainingDependencies.decrementAndGet() == 0) {
+                submit(dependent);
+            }
+        }
+    }
+
+    /**
+     * Skips a task whose dependency failed. The remaining dependencies of
+     * such a task never reach zero, so it is never submitted.
+     */
+    private void skip(Node node) {
+        if (node.isSkipped.compareAndSet(false, true)) {
+            finish(node, false);
+        }
+    }
+
+    private void awaitCompletion() {
+        try {
+            remainingNodes.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the tasks.");
+        }
+    }
+
+    /**
+     * @return The durations of the run tasks in milliseconds, in the order
+     * they completed.
+     */
+    public Map<String, Long> getDurationsInMillis() {
+        synchronized (durationsInMillis) {
+            return new LinkedHashMap<>(durationsInMillis);
+        }
+    }
+
+    private static class Node {
+
+        private final String name;
+        private final Runnable task;
+        private final AtomicInteger remainingDependencies;
+        private final List<Node> dependents = new ArrayList<>();
+        private final AtomicBoolean isSkipped = new AtomicBoolean();
+
+        private Node(String name, Runnable task, int dependencies) {
+            this.name = name;
+            this.task = task;
+            this.remainingDependencies = new AtomicInteger(dependencies);
+        }
+    }
+
+}
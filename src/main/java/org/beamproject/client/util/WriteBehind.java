@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Performs a write in the background once no further write has been requested
+ * for a quiet period, so that a burst of changes ends in a single write.
+ * Writes never run concurrently.
+ */
+public class WriteBehind {
+
+    private final Runnable write;
+    private final long quietPeriodMillis;
+    private final ScheduledExecutorService scheduler;
+    private final Object writeLock = new Object();
+    private final Runnable lockedWrite = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (writeLock) {
+                write.run();
+            }
+        }
+    };
+    private ScheduledFuture<?> pendingWrite;
+
+    /**
+     * @param write The write to perform.
+     * @param quietPeriodMillis The time to wait after the last request before
+     * writing.
+     */
+    public WriteBehind(Runnable write, long quietPeriodMillis) {
+        this(write, quietPeriodMillis, Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("write-behind-%d").setDaemon(true).build()));
+    }
+
+    WriteBehind(Runnable write, long quietPeriodMillis, ScheduledExecutorService scheduler) {
+        if (quietPeriodMillis < 0) {
+            throw new IllegalArgumentException("The quiet period may not be negative.");
+        }
+
+        this.write = write;
+        this.quietPeriodMillis = quietPeriodMillis;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Requests a write. A write that has been requested but not started yet is
+     * postponed until the quiet period has passed again.
+     */
+    public synchronized void request() {
+        if (pendingWrite != null) {
+            pendingWrite.cancel(false);
+        }
+
+        pendingWrite = scheduler.schedule(lockedWrite, quietPeriodMillis, MILLISECONDS);
+    }
+
+    /**
+     * Performs a requested write right away, or waits for it if it is already
+     * running. When this returns, every write requested before is completed.
+     *
+     * @throws IllegalStateException If the write failed in the background.
+     */
+    public void flush() {
+        ScheduledFuture<?> requestedWrite;
+
+        synchronized (this) {
+            requestedWrite = pendingWrite;
+            pendingWrite = null;
+        }
+
+        if (requestedWrite == null) {
+            return;
+        }
+
+        if (requestedWrite.cancel(false)) {
+            lockedWrite.run();
+        } else {
+            awaitCompletion(requestedWrite);
+        }
+    }
+
+    private void awaitCompletion(ScheduledFuture<?> requestedWrite) {
+        try {
+            requestedWrite.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("The write failed: " + ex.getCause().getMessage());
+        }
+    }
+
+    /**
+     * @return true if a write has been requested but not completed yet.
+     */
+    public synchronized boolean isPending() {
+        return pendingWrite != null && !pendingWrite.isDone();
+    }
+
+}
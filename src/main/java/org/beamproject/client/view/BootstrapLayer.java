@@ -22,6 +22,7 @@ import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import com.google.inject.Inject;
 import org.beamproject.client.Event;
+import org.beamproject.client.Handles;
 import static org.beamproject.client.Event.SHOW_MAIN_WINDOW;
 
 public class BootstrapLayer extends javax.swing.JPanel {
@@ -38,10 +39,9 @@ public class BootstrapLayer extends javax.swing.JPanel {
     }
 
     @Subscribe
+    @Handles(SHOW_MAIN_WINDOW)
     public void hide(Event event) {
-        if (event == SHOW_MAIN_WINDOW) {
-            setVisible(false);
-        }
+        setVisible(false);
     }
 
     @SuppressWarnings("unchecked")
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.view;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import javax.swing.JPanel;
+
+/**
+ * Constructs a layer on its first use, so that layers which are never shown
+ * cost no class loading, layout and memory at startup. The constructed layer
+ * is kept and reused.
+ * <p>
+ * This may only be used on the event dispatch thread.
+ *
+ * @param <T> The type of the layer.
+ */
+class LazyLayer<T extends JPanel> {
+
+    private final Provider<T> provider;
+    private T layer;
+
+    @Inject
+    LazyLayer(Provider<T> provider) {
+        this.provider = provider;
+    }
+
+    /**
+     * @return The layer, constructed on the first call.
+     */
+    T get() {
+        if (layer == null) {
+            layer = provider.get();
+        }
+
+        return layer;
+    }
+
+    boolean isConstructed() {
+        return layer != null;
+    }
+
+}
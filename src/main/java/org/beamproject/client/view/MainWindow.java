@@ -23,10 +23,15 @@ import com.google.common.eventbus.Subscribe;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import java.awt.Font;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
+import java.util.Arrays;
 import javax.swing.JPanel;
 import javax.swing.JToggleButton;
+import javax.swing.Timer;
 import org.beamproject.client.Event;
+import org.beamproject.client.Handles;
 import static org.beamproject.client.Event.DISPOSE;
 import static org.beamproject.client.Event.ENCRYPTED_CONFIG_UNLOCKED;
 import static org.beamproject.client.Event.SHOW_ADD_CONTACT_LAYER;
@@ -57,25 +62,27 @@ public class MainWindow extends javax.swing.JFrame {
     private final ChatModel chatModel;
     private final EventBus bus;
     private final BootstrapLayer bootstrapLayer;
+    private static final int PREWARM_DELAY_IN_MS = 2000;
     private JPanel layer;
     @Inject
-    private WelcomeLayer welcomeLayer;
+    private LazyLayer<WelcomeLayer> welcomeLayer;
     @Inject
-    private AddressLayer addressLayer;
+    private LazyLayer<AddressLayer> addressLayer;
     @Inject
-    private PasswordLayer passwordLayer;
+    private LazyLayer<PasswordLayer> passwordLayer;
     @Inject
-    private UnlockLayer unlockLayer;
+    private LazyLayer<UnlockLayer> unlockLayer;
     @Inject
-    private PasswordChangeLayer passwordChangeLayer;
+    private LazyLayer<PasswordChangeLayer> passwordChangeLayer;
     @Inject
-    private ServerChangeLayer serverChangeLayer;
+    private LazyLayer<ServerChangeLayer> serverChangeLayer;
     @Inject
-    private AddContactLayer addContactLayer;
+    private LazyLayer<AddContactLayer> addContactLayer;
     @Inject
-    private InfoLayer infoLayer;
+    private LazyLayer<InfoLayer> infoLayer;
     @Inject
-    private SettingsLayer settingsLayer;
+    private LazyLayer<SettingsLayer> settingsLayer;
+    private Timer prewarmTimer;
     private RegexValidator usernameValidator;
 
     @Inject
@@ -102,30 +109,32 @@ public class MainWindow extends javax.swing.JFrame {
     }
 
     @Subscribe
+    @Handles({SHOW_WIZARD_WELCOME_LAYER, SHOW_WIZARD_ADDRESS_LAYER, SHOW_WIZARD_PASSWORD_LAYER,
+        SHOW_UNLOCK_LAYER, SHOW_PASSWORD_CHANGE_LAYER, SHOW_SERVER_CHANGE_LAYER, SHOW_ADD_CONTACT_LAYER})
     public void showStrechedLayers(Event event) {
         JPanel newLayer;
 
         switch (event) {
             case SHOW_WIZARD_WELCOME_LAYER:
-                newLayer = welcomeLayer;
+                newLayer = welcomeLayer.get();
                 break;
             case SHOW_WIZARD_ADDRESS_LAYER:
-                newLayer = addressLayer;
+                newLayer = addressLayer.get();
                 break;
             case SHOW_WIZARD_PASSWORD_LAYER:
-                newLayer = passwordLayer;
+                newLayer = passwordLayer.get();
                 break;
             case SHOW_UNLOCK_LAYER:
-                newLayer = unlockLayer;
+                newLayer = unlockLayer.get();
                 break;
             case SHOW_PASSWORD_CHANGE_LAYER:
-                newLayer = passwordChangeLayer;
+                newLayer = passwordChangeLayer.get();
                 break;
             case SHOW_SERVER_CHANGE_LAYER:
-                newLayer = serverChangeLayer;
+                newLayer = serverChangeLayer.get();
                 break;
             case SHOW_ADD_CONTACT_LAYER:
-                newLayer = addContactLayer;
+                newLayer = addContactLayer.get();
                 break;
             default:
                 return;
@@ -136,19 +145,48 @@ public class MainWindow extends javax.swing.JFrame {
     }
 
     @Subscribe
+    @Handles(SHOW_MAIN_WINDOW)
     public void showMainWindow(Event event) {
-        if (event == SHOW_MAIN_WINDOW) {
-            disableLayers();
-            deselectAllButtons();
+        disableLayers();
+        deselectAllButtons();
+        startPrewarming();
+    }
+
+    /**
+     * Constructs the layers reachable from the main window in the background,
+     * one per {@value #PREWARM_DELAY_IN_MS} ms, so that opening them later
+     * does not wait for their construction.
+     */
+    private void startPrewarming() {
+        if (prewarmTimer != null) {
+            return;
         }
+
+        prewarmTimer = new Timer(PREWARM_DELAY_IN_MS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent event) {
+                prewarmNextLayer();
+            }
+        });
+        prewarmTimer.start();
+    }
+
+    private void prewarmNextLayer() {
+        for (LazyLayer<?> lazyLayer : Arrays.asList(settingsLayer, infoLayer, addContactLayer)) {
+            if (!lazyLayer.isConstructed()) {
+                lazyLayer.get();
+                return;
+            }
+        }
+
+        prewarmTimer.stop();
     }
 
     @Subscribe
+    @Handles(ENCRYPTED_CONFIG_UNLOCKED)
     public void updateAfterUnlocking(Event event) {
-        if (event == ENCRYPTED_CONFIG_UNLOCKED) {
-            updateUsername();
-            updateConnectionButton();
-        }
+        updateUsername();
+        updateConnectionButton();
     }
 
     private void updateUsername() {
@@ -164,19 +202,17 @@ public class MainWindow extends javax.swing.JFrame {
     }
 
     @Subscribe
+    @Handles(UPDATE_CONNECTION_STATUS)
     public void updateConnectionStatus(Event event) {
-        if (event == UPDATE_CONNECTION_STATUS) {
-            boolean isConnected = model.getConnectionModel().isConnected();
-            connectionToggleButton.setText(isConnected ? "Online" : "Offline");
-        }
+        boolean isConnected = model.getConnectionModel().isConnected();
+        connectionToggleButton.setText(isConnected ? "Online" : "Offline");
     }
 
     @Subscribe
+    @Handles(DISPOSE)
     public void dispose(Event event) {
-        if (event == DISPOSE) {
-            dispose();
-            System.exit(0);
-        }
+        dispose();
+        System.exit(0);
     }
 
     @SuppressWarnings("unchecked")
@@ -342,11 +378,11 @@ public class MainWindow extends javax.swing.JFrame {
     }// </editor-fold>//GEN-END:initComponents
 
     private void settingsButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_settingsButtonActionPerformed
-        updateLayerVisibility(settingsButton, settingsLayer);
+        updateLayerVisibility(settingsButton, settingsLayer.get());
     }//GEN-LAST:event_settingsButtonActionPerformed
 
     private void infoButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_infoButtonActionPerformed
-        updateLayerVisibility(infoButton, infoLayer);
+        updateLayerVisibility(infoButton, infoLayer.get());
     }//GEN-LAST:event_infoButtonActionPerformed
 
     private void usernameLabelMouseEntered(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_usernameLabelMouseEntered
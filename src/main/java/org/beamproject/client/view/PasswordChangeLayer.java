@@ -24,6 +24,7 @@ import com.google.inject.Inject;
 import java.util.Observable;
 import java.util.Observer;
 import org.beamproject.client.Event;
+import org.beamproject.client.Handles;
 import static org.beamproject.client.Event.PASSWORD_CHANGE_WRONG_PASSWORD;
 import static org.beamproject.client.Event.SHOW_MAIN_WINDOW;
 import org.beamproject.client.model.MenuModel;
@@ -64,18 +65,16 @@ public class PasswordChangeLayer extends javax.swing.JPanel implements Observer
     }
 
     @Subscribe
+    @Handles(PASSWORD_CHANGE_WRONG_PASSWORD)
     public void reactToWrongOldPassword(Event event) {
-        if (event == PASSWORD_CHANGE_WRONG_PASSWORD) {
-            oldPasswordField.setBackground(Validator.ERROR_BACKGROUND);
-        }
+        oldPasswordField.setBackground(Validator.ERROR_BACKGROUND);
     }
 
     @Subscribe
+    @Handles(SHOW_MAIN_WINDOW)
     public void clearPasswords(Event event) {
-        if (event == SHOW_MAIN_WINDOW) {
-            oldPasswordField.setText("");
-            passwordForm.resetPasswordFields();
-        }
+        oldPasswordField.setText("");
+        passwordForm.resetPasswordFields();
     }
 
     @SuppressWarnings("unchecked")
@@ -22,6 +22,7 @@ import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import com.google.inject.Inject;
 import org.beamproject.client.Event;
+import org.beamproject.client.Handles;
 import static org.beamproject.client.Event.UNLOCK_LAYER_WRONG_PASSWORD;
 import org.beamproject.client.model.MainModel;
 import org.beamproject.client.util.Components;
@@ -43,12 +44,11 @@ public class UnlockLayer extends javax.swing.JPanel {
     }
 
     @Subscribe
+    @Handles(UNLOCK_LAYER_WRONG_PASSWORD)
     public void reactToWrongPassword(Event event) {
-        if (event == UNLOCK_LAYER_WRONG_PASSWORD) {
-            passwordLabel.setText(WRONG_PASSWORD_TEXT);
-            passwordField.setText("");
-            passwordField.requestFocus();
-        }
+        passwordLabel.setText(WRONG_PASSWORD_TEXT);
+        passwordField.setText("");
+        passwordField.requestFocus();
     }
 
     @Override
@@ -22,11 +22,15 @@ import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import java.awt.image.BufferedImage;
 import javax.swing.ImageIcon;
 import org.beamproject.client.Event;
+import org.beamproject.client.Handles;
 import static org.beamproject.client.Event.ENCRYPTED_CONFIG_UNLOCKED;
+import static org.beamproject.client.Event.USER_ADDRESS_CHANGED;
 import org.beamproject.client.model.MenuModel;
 import org.beamproject.client.util.Components;
+import org.beamproject.client.util.QrCodeRenderer;
 import org.beamproject.client.view.MainWindow;
 
 @Singleton
@@ -37,6 +41,7 @@ public class InfoLayer extends javax.swing.JPanel {
     private final MenuModel model;
     private final EventBus bus;
     private final MainWindow mainWindow;
+    private final QrCodeRenderer qrCodeRenderer;
 
     @Inject
     public InfoLayer(MenuModel model, EventBus bus, MainWindow mainWindow) {
@@ -46,15 +51,26 @@ public class InfoLayer extends javax.swing.JPanel {
         this.bus.register(this);
 
         initComponents();
+        qrCodeRenderer = model.createUserAddressQrCodeRenderer(new QrCodeRenderer.Target() {
+            @Override
+            public void show(BufferedImage image) {
+                qrCodeLabel.setSize(image.getWidth(), image.getHeight());
+                qrCodeLabel.validate();
+                qrCodeLabel.setIcon(new ImageIcon(image));
+            }
+        });
+
+        if (model.getEncryptedConfig() != null) { // Constructed after unlocking.
+            loadAndShowQrCode(ENCRYPTED_CONFIG_UNLOCKED);
+        }
     }
 
     @Subscribe
+    @Handles({ENCRYPTED_CONFIG_UNLOCKED, USER_ADDRESS_CHANGED})
     public void loadAndShowQrCode(Event event) {
-        if (event == ENCRYPTED_CONFIG_UNLOCKED) {
-            Components.layoutHtmlLabels(shareLabel);
-            qrCodeLabel.setText("");
-            generateAndShowQrCode();
-        }
+        Components.layoutHtmlLabels(shareLabel);
+        qrCodeLabel.setText("");
+        generateAndShowQrCode();
     }
 
     @SuppressWarnings("unchecked")
@@ -128,10 +144,7 @@ public class InfoLayer extends javax.swing.JPanel {
 
     private void generateAndShowQrCode() {
         int qrCodeWidth = mainWindow.getSize().width - HORIZONTAL_GAP;
-        ImageIcon qrCode = new ImageIcon(model.getUserAddressQrCode(qrCodeWidth));
-        qrCodeLabel.setSize(qrCodeWidth, qrCodeWidth);
-        qrCodeLabel.validate();
-        qrCodeLabel.setIcon(qrCode);
+        qrCodeRenderer.request(qrCodeWidth);
     }
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
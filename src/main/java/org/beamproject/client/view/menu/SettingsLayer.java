@@ -23,6 +23,7 @@ import com.google.common.eventbus.Subscribe;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.beamproject.client.Event;
+import org.beamproject.client.Handles;
 import static org.beamproject.client.Event.ENCRYPTED_CONFIG_UNLOCKED;
 import org.beamproject.client.model.MainModel.AcceptedSender;
 import static org.beamproject.client.model.MainModel.AcceptedSender.CONTACTS;
@@ -44,14 +45,17 @@ public class SettingsLayer extends javax.swing.JPanel {
         this.bus.register(this);
 
         initComponents();
+
+        if (model.getEncryptedConfig() != null) { // Constructed after unlocking.
+            loadSettings(ENCRYPTED_CONFIG_UNLOCKED);
+        }
     }
 
     @Subscribe
+    @Handles(ENCRYPTED_CONFIG_UNLOCKED)
     public void loadSettings(Event event) {
-        if (event == ENCRYPTED_CONFIG_UNLOCKED) {
-            restoreAcceptMessagesRadioBoxes();
-            restorePasswordRememberCheckBox();
-        }
+        restoreAcceptMessagesRadioBoxes();
+        restorePasswordRememberCheckBox();
     }
 
     private void restoreAcceptMessagesRadioBoxes() {
@@ -22,11 +22,14 @@ import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import java.awt.image.BufferedImage;
 import javax.swing.ImageIcon;
 import org.beamproject.client.Event;
+import org.beamproject.client.Handles;
 import static org.beamproject.client.Event.ENABLE_WIZARD_ADDRESS_GENERATED_ADDRESS;
 import org.beamproject.client.model.WizardModel;
 import org.beamproject.client.util.Components;
+import org.beamproject.client.util.QrCodeRenderer;
 
 @Singleton
 public class AddressLayer extends javax.swing.JPanel {
@@ -35,6 +38,7 @@ public class AddressLayer extends javax.swing.JPanel {
     private static final int QR_CODE_SIZE_IN_PX = 160;
     private final WizardModel model;
     private final EventBus bus;
+    private final QrCodeRenderer qrCodeRenderer;
 
     @Inject
     public AddressLayer(WizardModel model, EventBus bus) {
@@ -44,6 +48,13 @@ public class AddressLayer extends javax.swing.JPanel {
 
         initComponents();
         copyButton.setVisible(false);
+        qrCodeRenderer = model.createUserAddressQrCodeRenderer(new QrCodeRenderer.Target() {
+            @Override
+            public void show(BufferedImage image) {
+                qrCodeLabel.setIcon(new ImageIcon(image));
+                copyButton.setVisible(true);
+            }
+        });
     }
 
     @Override
@@ -54,11 +65,9 @@ public class AddressLayer extends javax.swing.JPanel {
     }
 
     @Subscribe
+    @Handles(ENABLE_WIZARD_ADDRESS_GENERATED_ADDRESS)
     public void showGeneratedAddress(Event event) {
-        if (event == ENABLE_WIZARD_ADDRESS_GENERATED_ADDRESS) {
-            qrCodeLabel.setIcon(new ImageIcon(model.getUserAddressQrCode(QR_CODE_SIZE_IN_PX)));
-            copyButton.setVisible(true);
-        }
+        qrCodeRenderer.request(QR_CODE_SIZE_IN_PX);
     }
 
     @SuppressWarnings("unchecked")
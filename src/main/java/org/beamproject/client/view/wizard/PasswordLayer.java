@@ -24,6 +24,7 @@ import com.google.inject.Inject;
 import java.util.Observable;
 import java.util.Observer;
 import org.beamproject.client.Event;
+import org.beamproject.client.Handles;
 import static org.beamproject.client.Event.SHOW_MAIN_WINDOW;
 import org.beamproject.client.model.WizardModel;
 import org.beamproject.client.util.Components;
@@ -62,10 +63,9 @@ public class PasswordLayer extends javax.swing.JPanel implements Observer {
     }
 
     @Subscribe
+    @Handles(SHOW_MAIN_WINDOW)
     public void clearPasswords(Event event) {
-        if (event == SHOW_MAIN_WINDOW) {
-            passwordForm.resetPasswordFields();
-        }
+        passwordForm.resetPasswordFields();
     }
 
     @SuppressWarnings("unchecked")
@@ -46,6 +46,10 @@ public class WelcomeLayer extends javax.swing.JPanel {
 
     @Override
     public void setVisible(boolean visible) {
+        if (visible) {
+            model.prepareKeyPair();
+        }
+
         Components.layoutHtmlLabels(introductionLabel, usernameLabel, activationCodeLabel, activationCodeExampleLabel);
         super.setVisible(visible);
         usernameTextField.requestFocus();
@@ -0,0 +1,12 @@
+#!/bin/sh
+#
+# Starts beam-client with the class data sharing archive built by the Maven
+# profile 'appcds'. Without a usable archive, the JVM starts without it.
+#
+
+DIRECTORY=$(cd "$(dirname "$0")" && pwd)
+JAR=$(ls "$DIRECTORY"/beam-client-*-jar-with-dependencies.jar | head -n 1)
+ARCHIVE="$DIRECTORY/beam-client.jsa"
+JAVA="${JAVA_HOME:+$JAVA_HOME/bin/}java"
+
+exec "$JAVA" -XX:+UnlockDiagnosticVMOptions -Xshare:auto -XX:SharedArchiveFile="$ARCHIVE" -jar "$JAR" "$@"
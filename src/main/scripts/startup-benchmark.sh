@@ -0,0 +1,41 @@
+#!/bin/sh
+#
+# Measures the startup time of beam-client without and with the class data
+# sharing archive built by the Maven profile 'appcds'. Every run starts the
+# application with a copy of the account prepared by the profile, so that it
+# unlocks the data with the remembered password, and exits as soon as the
+# window is shown. A display is required.
+#
+# Usage: startup-benchmark.sh [runs]
+#
+
+RUNS=${1:-10}
+DIRECTORY=$(cd "$(dirname "$0")" && pwd)
+JAR=$(ls "$DIRECTORY"/beam-client-*-jar-with-dependencies.jar | head -n 1)
+ARCHIVE="$DIRECTORY/beam-client.jsa"
+JAVA="${JAVA_HOME:+$JAVA_HOME/bin/}java"
+TRAINING_HOME="$DIRECTORY/cds-home"
+HOME_DIRECTORY=$(mktemp -d)
+trap 'rm -rf "$HOME_DIRECTORY"' EXIT
+
+measure() {
+    TOTAL=0
+    RUN=0
+
+    while [ $RUN -lt "$RUNS" ]; do
+        rm -rf "$HOME_DIRECTORY/.beam"
+        cp -R "$TRAINING_HOME/.beam" "$HOME_DIRECTORY/.beam"
+        START=$(date +%s%N)
+        "$JAVA" "$@" -Duser.home="$HOME_DIRECTORY" -Dbeam.exitAfterStartup=true \
+            -jar "$JAR" > /dev/null 2>&1
+        END=$(date +%s%N)
+        TOTAL=$((TOTAL + (END - START) / 1000000))
+        RUN=$((RUN + 1))
+    done
+
+    echo $((TOTAL / RUNS))
+}
+
+echo "Average startup over $RUNS runs in ms:"
+echo "  without archive: $(measure -Xshare:auto)"
+echo "  with archive:    $(measure -XX:+UnlockDiagnosticVMOptions -Xshare:on -XX:SharedArchiveFile="$ARCHIVE")"
@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client;
+
+import com.google.common.eventbus.DeadEvent;
+import com.google.common.eventbus.SubscriberExceptionContext;
+import com.google.common.eventbus.Subscribe;
+import java.awt.Component;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import javax.swing.SwingUtilities;
+import static org.beamproject.client.Event.DISPOSE;
+import static org.beamproject.client.Event.SHOW_MAIN_WINDOW;
+import static org.beamproject.client.Event.UPDATE_CONNECTION_STATUS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EventDispatcherTest {
+
+    private EventDispatcher dispatcher;
+    private List<Object> received;
+    private List<Boolean> receivedOnEventDispatchThread;
+    private List<Throwable> handledExceptions;
+
+    @Before
+    public void setUp() {
+        handledExceptions = new ArrayList<>();
+        dispatcher = new EventDispatcher(new EventExceptionHandler() {
+            @Override
+            public void handleException(Throwable exception, SubscriberExceptionContext context) {
+                handledExceptions.add(exception);
+            }
+
+            @Override
+            public void handleException(Throwable exception, Event event, Object subscriber, Method subscriberMethod) {
+                handledExceptions.add(exception);
+            }
+        });
+        received = new ArrayList<>();
+        receivedOnEventDispatchThread = new ArrayList<>();
+    }
+
+    @Test
+    public void testPostToHandlingSubscriber() {
+        dispatcher.register(new MainWindowSubscriber());
+
+        dispatcher.post(UPDATE_CONNECTION_STATUS);
+        dispatcher.post(SHOW_MAIN_WINDOW);
+
+        assertEquals(Arrays.<Object>asList(SHOW_MAIN_WINDOW), received);
+    }
+
+    @Test
+    public void testPostToSubscriberWithoutHandles() {
+        dispatcher.register(new AnySubscriber());
+
+        dispatcher.post(UPDATE_CONNECTION_STATUS);
+        dispatcher.post(SHOW_MAIN_WINDOW);
+
+        assertEquals(Arrays.<Object>asList(UPDATE_CONNECTION_STATUS, SHOW_MAIN_WINDOW), received);
+    }
+
+    @Test
+    public void testPostOtherObject() {
+        dispatcher.register(new AnySubscriber());
+        dispatcher.register(new StringSubscriber());
+
+        dispatcher.post("text");
+
+        assertEquals(Arrays.<Object>asList("text"), received);
+    }
+
+    @Test
+    public void testPostWithoutHandler() {
+        dispatcher.register(new DeadEventSubscriber());
+
+        dispatcher.post(DISPOSE);
+
+        assertEquals(1, received.size());
+        assertEquals(DISPOSE, ((DeadEvent) received.get(0)).getEvent());
+    }
+
+    @Test
+    public void testPostDuringHandling() {
+        dispatcher.register(new ForwardingSubscriber());
+        dispatcher.register(new AnySubscriber());
+
+        dispatcher.post(SHOW_MAIN_WINDOW);
+
+        assertEquals(Arrays.<Object>asList(SHOW_MAIN_WINDOW, UPDATE_CONNECTION_STATUS), received);
+    }
+
+    @Test
+    public void testPostOnFailingSubscriber() {
+        dispatcher.register(new FailingSubscriber());
+        dispatcher.register(new AnySubscriber());
+
+        dispatcher.post(SHOW_MAIN_WINDOW);
+
+        assertTrue(received.contains(SHOW_MAIN_WINDOW));
+        assertEquals(1, handledExceptions.size());
+        assertTrue(handledExceptions.get(0) instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testUnregister() {
+        MainWindowSubscriber subscriber = new MainWindowSubscriber();
+        dispatcher.register(subscriber);
+        dispatcher.unregister(subscriber);
+
+        dispatcher.post(SHOW_MAIN_WINDOW);
+
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void testPostToViewCoalescesOnEventDispatchThread() throws Exception {
+        dispatcher.register(new ViewSubscriber());
+        final CountDownLatch latch = new CountDownLatch(1);
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                awaitQuietly(latch);
+            }
+        });
+
+        dispatcher.post(UPDATE_CONNECTION_STATUS);
+        dispatcher.post(UPDATE_CONNECTION_STATUS);
+        dispatcher.post(SHOW_MAIN_WINDOW);
+        dispatcher.post(UPDATE_CONNECTION_STATUS);
+        latch.countDown();
+        waitForEventDispatchThread();
+
+        assertEquals(Arrays.<Object>asList(SHOW_MAIN_WINDOW, UPDATE_CONNECTION_STATUS), received);
+        assertEquals(Arrays.asList(true, true), receivedOnEventDispatchThread);
+    }
+
+    @Test
+    public void testPostToViewOnEventDispatchThreadAfterPendingEvents() throws Exception {
+        dispatcher.register(new ViewSubscriber());
+        final CountDownLatch latch = new CountDownLatch(1);
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                awaitQuietly(latch);
+                dispatcher.post(SHOW_MAIN_WINDOW);
+            }
+        });
+
+        dispatcher.post(UPDATE_CONNECTION_STATUS);
+        dispatcher.post(SHOW_MAIN_WINDOW);
+        latch.countDown();
+        waitForEventDispatchThread();
+
+        assertEquals(Arrays.<Object>asList(UPDATE_CONNECTION_STATUS, SHOW_MAIN_WINDOW), received);
+    }
+
+    @Test
+    public void testPostToViewAfterDelivery() throws Exception {
+        dispatcher.register(new ViewSubscriber());
+
+        dispatcher.post(UPDATE_CONNECTION_STATUS);
+        waitForEventDispatchThread();
+        dispatcher.post(UPDATE_CONNECTION_STATUS);
+        waitForEventDispatchThread();
+
+        assertEquals(Arrays.<Object>asList(UPDATE_CONNECTION_STATUS, UPDATE_CONNECTION_STATUS), received);
+    }
+
+    private void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void waitForEventDispatchThread() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+    }
+
+    public class ViewSubscriber extends Component {
+
+        private static final long serialVersionUID = 1L;
+
+        @Subscribe
+        public void consume(Event event) {
+            received.add(event);
+            receivedOnEventDispatchThread.add(SwingUtilities.isEventDispatchThread());
+        }
+    }
+
+    public class MainWindowSubscriber {
+
+        @Subscribe
+        @Handles(SHOW_MAIN_WINDOW)
+        public void consume(Event event) {
+            received.add(event);
+        }
+    }
+
+    public class AnySubscriber {
+
+        @Subscribe
+        public void consume(Event event) {
+            received.add(event);
+        }
+    }
+
+    public class StringSubscriber {
+
+        @Subscribe
+        public void consume(String text) {
+            received.add(text);
+        }
+    }
+
+    public class DeadEventSubscriber {
+
+        @Subscribe
+        public void consume(DeadEvent event) {
+            received.add(event);
+        }
+    }
+
+    public class ForwardingSubscriber {
+
+        @Subscribe
+        @Handles(SHOW_MAIN_WINDOW)
+        public void forward(Event event) {
+            dispatcher.post(UPDATE_CONNECTION_STATUS);
+        }
+    }
+
+    public class FailingSubscriber {
+
+        @Subscribe
+        @Handles(SHOW_MAIN_WINDOW)
+        public void fail(Event event) {
+            throw new IllegalStateException("Failing on purpose.");
+        }
+    }
+
+}
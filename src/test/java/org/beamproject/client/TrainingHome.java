@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.util.Modules;
+import java.io.File;
+import org.beamproject.client.model.MainModel;
+import org.beamproject.client.model.WizardModel;
+import org.beamproject.client.storage.ContactStore;
+import static org.beamproject.client.util.ConfigKey.CONNECT_TO_SERVER;
+import org.beamproject.common.Server;
+import org.beamproject.common.User;
+import org.beamproject.common.util.Executor;
+
+/**
+ * Prepares the configuration directory for the training run of the class data
+ * sharing archive, see the Maven profile {@code appcds}. The account is set up
+ * with the {@link WizardModel} and the password is remembered, so starting the
+ * application with this directory unlocks the data without any interaction.
+ * Some contacts and messages are stored as well, so that the local stores are
+ * read on startup.
+ * <p>
+ * The directory is the one of the system property {@code user.home}. An
+ * existing configuration in there is replaced.
+ */
+public class TrainingHome {
+
+    private final static String USERNAME = "training";
+    private final static char[] PASSWORD = "training".toCharArray();
+    private final static int CONTACTS = 20;
+    private final static int MESSAGES_PER_CONTACT = 50;
+
+    public static void main(String args[]) {
+        delete(new File(App.CONFIG_DIRECTORY_PATH));
+
+        Injector injector = Guice.createInjector(Modules.override(new AppModule()).with(new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(Executor.class).toInstance(new ExecutorFake());
+            }
+        }));
+        MainModel model = injector.getInstance(MainModel.class);
+        WizardModel wizard = injector.getInstance(WizardModel.class);
+
+        model.bootstrap();
+        wizard.prepareKeyPair();
+        wizard.processWelcomeLayer(USERNAME, Server.generate().getAddress());
+        wizard.processAddressLayer();
+        wizard.processPasswordLayer(PASSWORD, true);
+
+        // The training run must not depend on a reachable server.
+        model.getEncryptedConfig().set(CONNECT_TO_SERVER, String.valueOf(false));
+        storeContactsAndMessages(model);
+        model.shutdown();
+
+        System.exit(0);
+    }
+
+    private static void storeContactsAndMessages(MainModel model) {
+        long timestamp = System.currentTimeMillis();
+
+        for (int i = 0; i < CONTACTS; i++) {
+            User contact = User.generate();
+            model.getContactStore().add(contact);
+            String fingerprint = ContactStore.fingerprint(contact);
+
+            for (int j = 0; j < MESSAGES_PER_CONTACT; j++) {
+                model.getChatHistory().append(timestamp++, fingerprint, j % 2 == 0, "Training message " + j);
+            }
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+
+        if (file.exists() && !file.delete()) {
+            throw new IllegalStateException("Could not delete " + file);
+        }
+    }
+
+}
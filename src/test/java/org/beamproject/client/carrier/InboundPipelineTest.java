@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.carrier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import org.beamproject.client.ExecutorFake;
+import static org.beamproject.client.carrier.InboundPipeline.OverflowPolicy.DROP_NEWEST;
+import static org.beamproject.client.carrier.InboundPipeline.OverflowPolicy.DROP_OLDEST;
+import org.beamproject.common.Server;
+import org.beamproject.common.User;
+import org.beamproject.common.crypto.CryptoPacker;
+import org.beamproject.common.crypto.CryptoPackerPool;
+import org.beamproject.common.crypto.CryptoPackerPoolFactory;
+import org.beamproject.common.crypto.HandshakeChallenger;
+import org.beamproject.common.message.Message;
+import org.beamproject.common.util.Executor;
+import org.beamproject.common.util.Task;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InboundPipelineTest {
+
+    private final HandshakeChallenger challenger = new HandshakeChallenger(User.generate());
+    private final Server server = Server.generate();
+    private CryptoPackerPool packerPool;
+    private ScheduledExecutorService scheduler;
+    private Map<Message, String> labels;
+    private List<String> handled;
+    private CountDownLatch handledLatch;
+    private List<Task> deferredTasks;
+    private Executor deferringExecutor;
+    private InboundPipeline pipeline;
+
+    @Before
+    public void setUp() {
+        packerPool = new CryptoPackerPool(new CryptoPackerPoolFactory());
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        labels = Collections.synchronizedMap(new IdentityHashMap<Message, String>());
+        handled = Collections.synchronizedList(new ArrayList<String>());
+        handledLatch = new CountDownLatch(0);
+        deferredTasks = new ArrayList<>();
+        deferringExecutor = new Executor() {
+            @Override
+            public void runAsync(Task task) {
+                deferredTasks.add(task);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Decrypts a ciphertext such as {@code "alice:1"} to a message of the
+     * sender {@code "alice"}.
+     */
+    private class RecordingConsumer implements InboundPipeline.Consumer {
+
+        @Override
+        public Message decrypt(CryptoPacker packer, byte[] ciphertext) {
+            Message message = challenger.produceChallenge(server);
+            labels.put(message, new String(ciphertext));
+            return message;
+        }
+
+        @Override
+        public String readSenderKey(Message message) {
+            return labels.get(message).split(":")[0];
+        }
+
+        @Override
+        public void handle(Message message) {
+            handled.add(labels.get(message));
+            handledLatch.countDown();
+        }
+    }
+
+    private InboundPipeline createPipeline(Executor executor, int capacity, int workerCount,
+            InboundPipeline.OverflowPolicy policy) {
+        return new InboundPipeline(executor, scheduler, packerPool, new RecordingConsumer(),
+                capacity, workerCount, policy);
+    }
+
+    private boolean offer(String label) {
+        return pipeline.offer(label.getBytes(), "username");
+    }
+
+    private void runDeferredTasks() {
+        while (!deferredTasks.isEmpty()) {
+            deferredTasks.remove(0).run();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorOnZeroCapacity() {
+        createPipeline(new ExecutorFake(), 0, 1, DROP_NEWEST);
+    }
+
+    @Test
+    public void testOffer() {
+        pipeline = createPipeline(new ExecutorFake(), 2, 1, DROP_NEWEST);
+
+        assertTrue(offer("a:0"));
+        assertTrue(offer("b:0"));
+        assertTrue(offer("c:0"));
+
+        assertEquals(Arrays.asList("a:0", "b:0", "c:0"), handled);
+        assertEquals(0, pipeline.getQueueDepth());
+        assertEquals(0, pipeline.getDroppedMessages());
+    }
+
+    @Test
+    public void testOfferOnDropNewest() {
+        pipeline = createPipeline(deferringExecutor, 2, 1, DROP_NEWEST);
+
+        assertTrue(offer("a:0"));
+        assertTrue(offer("b:0"));
+        assertFalse(offer("c:0"));
+        assertEquals(2, pipeline.getQueueDepth());
+        assertEquals(1, pipeline.getDroppedMessages());
+
+        runDeferredTasks();
+
+        assertEquals(Arrays.asList("a:0", "b:0"), handled);
+        assertEquals(0, pipeline.getQueueDepth());
+    }
+
+    @Test
+    public void testOfferOnDropOldest() {
+        pipeline = createPipeline(deferringExecutor, 2, 1, DROP_OLDEST);
+
+        assertTrue(offer("a:0"));
+        assertTrue(offer("b:0"));
+        assertTrue(offer("c:0"));
+        assertEquals(2, pipeline.getQueueDepth());
+        assertEquals(1, pipeline.getDroppedMessages());
+
+        runDeferredTasks();
+
+        assertEquals(Arrays.asList("b:0", "c:0"), handled);
+        assertEquals(0, pipeline.getQueueDepth());
+    }
+
+    @Test
+    public void testOfferOnStartingAllWorkersForOneUsername() {
+        pipeline = createPipeline(deferringExecutor, 64, 4, DROP_NEWEST);
+
+        for (int i = 0; i < 10; i++) {
+            offer("a:" + i);
+        }
+
+        assertEquals(4, deferredTasks.size());
+        runDeferredTasks();
+        assertEquals(10, handled.size());
+    }
+
+    @Test
+    public void testOfferOnLimitingWorkers() {
+        pipeline = createPipeline(deferringExecutor, 64, 2, DROP_NEWEST);
+
+        for (int i = 0; i < 20; i++) {
+            offer("user" + i + ":0");
+        }
+
+        assertEquals(2, deferredTasks.size());
+        runDeferredTasks();
+        assertEquals(20, handled.size());
+    }
+
+    @Test
+    public void testOfferOnKeepingOrderPerSenderWhenDecryptedOutOfOrder() throws Exception {
+        final CountDownLatch secondDecrypted = new CountDownLatch(1);
+        handledLatch = new CountDownLatch(3);
+        pipeline = new InboundPipeline(getThreadExecutor(), scheduler, packerPool, new RecordingConsumer() {
+            @Override
+            public Message decrypt(CryptoPacker packer, byte[] ciphertext) {
+                String label = new String(ciphertext);
+
+                if (label.equals("alice:0")) {
+                    await(secondDecrypted);
+                }
+
+                Message message = super.decrypt(packer, ciphertext);
+
+                if (label.equals("alice:1")) {
+                    secondDecrypted.countDown();
+                }
+
+                return message;
+            }
+        }, 64, 2, DROP_NEWEST);
+
+        offer("alice:0");
+        offer("alice:1");
+        offer("bob:0");
+
+        assertTrue(handledLatch.await(5, SECONDS));
+        assertEquals(Arrays.asList("alice:0", "alice:1"), filter(handled, "alice"));
+    }
+
+    @Test
+    public void testOfferOnFailingBorrow() throws Exception {
+        final int[] borrowAttempts = {0};
+        packerPool = new CryptoPackerPool(new CryptoPackerPoolFactory()) {
+            @Override
+            public CryptoPacker borrowObject() throws Exception {
+                if (borrowAttempts[0]++ == 0) {
+                    throw new Exception("exhausted");
+                }
+
+                return super.borrowObject();
+            }
+        };
+        handledLatch = new CountDownLatch(2);
+        pipeline = createPipeline(new ExecutorFake(), 8, 1, DROP_NEWEST);
+
+        assertTrue(offer("a:0"));
+        assertTrue(handled.isEmpty());
+        assertEquals(1, pipeline.getQueueDepth());
+
+        assertTrue(offer("b:0"));
+        assertEquals(1, borrowAttempts[0]);
+
+        assertTrue(handledLatch.await(5, SECONDS));
+        assertEquals(2, borrowAttempts[0]);
+        assertEquals(Arrays.asList("a:0", "b:0"), handled);
+    }
+
+    private Executor getThreadExecutor() {
+        return new Executor() {
+            @Override
+            public void runAsync(final Task task) {
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        task.run();
+                    }
+                }).start();
+            }
+        };
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, SECONDS));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<String> filter(List<String> labels, String sender) {
+        List<String> filtered = new ArrayList<>();
+
+        synchronized (labels) {
+            for (String label : labels) {
+                if (label.startsWith(sender + ":")) {
+                    filtered.add(label);
+                }
+            }
+        }
+
+        return filtered;
+    }
+
+}
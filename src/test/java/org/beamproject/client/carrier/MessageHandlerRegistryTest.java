@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.carrier;
+
+import org.beamproject.common.Server;
+import org.beamproject.common.User;
+import org.beamproject.common.crypto.HandshakeChallenger;
+import static org.beamproject.common.message.Field.Cnt.TypeValue.HS_CHALLENGE;
+import static org.beamproject.common.message.Field.Cnt.TypeValue.HS_RESPONSE;
+import org.beamproject.common.message.Message;
+import org.beamproject.common.message.MessageHandler;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MessageHandlerRegistryTest {
+
+    private MessageHandlerRegistry registry;
+    private Message challenge;
+
+    @Before
+    public void setUp() {
+        registry = new MessageHandlerRegistry();
+        challenge = new HandshakeChallenger(User.generate()).produceChallenge(Server.generate());
+    }
+
+    @Test
+    public void testHandleOnUnknownType() {
+        assertFalse(registry.isRegistered(HS_CHALLENGE));
+        assertNull(registry.handle(challenge));
+    }
+
+    @Test
+    public void testHandle() {
+        EchoHandler handler = new EchoHandler();
+        registry.register(HS_CHALLENGE, handler);
+
+        assertTrue(registry.isRegistered(HS_CHALLENGE));
+        assertFalse(registry.isRegistered(HS_RESPONSE));
+        assertSame(challenge, registry.handle(challenge));
+        assertSame(challenge, registry.handle(challenge));
+        assertEquals(2, handler.handledMessages);
+    }
+
+    @Test
+    public void testRegisterOnReplacing() {
+        EchoHandler first = new EchoHandler();
+        EchoHandler second = new EchoHandler();
+        registry.register(HS_CHALLENGE, first);
+        registry.register(HS_CHALLENGE, second);
+
+        registry.handle(challenge);
+
+        assertEquals(0, first.handledMessages);
+        assertEquals(1, second.handledMessages);
+    }
+
+    private static class EchoHandler extends MessageHandler {
+
+        private int handledMessages = 0;
+
+        @Override
+        protected Message handleValidMessage() {
+            handledMessages++;
+            return message;
+        }
+    }
+
+}
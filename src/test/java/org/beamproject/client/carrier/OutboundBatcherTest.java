@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.carrier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.beamproject.client.ExecutorFake;
+import org.beamproject.common.Server;
+import org.beamproject.common.User;
+import org.beamproject.common.crypto.CryptoPacker;
+import org.beamproject.common.crypto.CryptoPackerPool;
+import org.beamproject.common.crypto.CryptoPackerPoolFactory;
+import org.beamproject.common.crypto.HandshakeChallenger;
+import org.beamproject.common.message.Message;
+import org.beamproject.common.util.Executor;
+import org.beamproject.common.util.Task;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OutboundBatcherTest {
+
+    private final Server SERVER = Server.generate();
+    private final User USER = User.generate();
+    private int borrowedPackers;
+    private CryptoPackerPool packerPool;
+    private List<String> deliveredTopics;
+    private List<Exception> failures;
+    private List<Task> deferredTasks;
+    private Executor deferringExecutor;
+    private OutboundBatcher batcher;
+
+    @Before
+    public void setUp() {
+        borrowedPackers = 0;
+        packerPool = new CryptoPackerPool(new CryptoPackerPoolFactory()) {
+            @Override
+            public CryptoPacker borrowObject() throws Exception {
+                borrowedPackers++;
+                return super.borrowObject();
+            }
+        };
+        deliveredTopics = new ArrayList<>();
+        failures = new ArrayList<>();
+        deferredTasks = new ArrayList<>();
+        deferringExecutor = new Executor() {
+            @Override
+            public void runAsync(Task task) {
+                deferredTasks.add(task);
+            }
+        };
+    }
+
+    private OutboundBatcher.Sender getRecordingSender() {
+        return new OutboundBatcher.Sender() {
+            @Override
+            public void deliver(byte[] ciphertext, String topic) {
+                assertTrue(ciphertext.length > 0);
+                deliveredTopics.add(topic);
+            }
+
+            @Override
+            public void fail(Message message, Exception exception) {
+                failures.add(exception);
+            }
+        };
+    }
+
+    private Message produceMessage() {
+        return new HandshakeChallenger(USER).produceChallenge(SERVER);
+    }
+
+    private void runDeferredTasks() {
+        while (!deferredTasks.isEmpty()) {
+            deferredTasks.remove(0).run();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorOnZeroBatchSize() {
+        new OutboundBatcher(new ExecutorFake(), packerPool, getRecordingSender(), 0, 0);
+    }
+
+    @Test
+    public void testEnqueue() {
+        batcher = new OutboundBatcher(new ExecutorFake(), packerPool, getRecordingSender(), 0, 8);
+
+        batcher.enqueue(produceMessage(), "a");
+        batcher.enqueue(produceMessage(), "b");
+
+        assertEquals(Arrays.asList("a", "b"), deliveredTopics);
+        assertEquals(2, borrowedPackers);
+        assertTrue(failures.isEmpty());
+    }
+
+    @Test
+    public void testEnqueueOnBurst() {
+        batcher = new OutboundBatcher(deferringExecutor, packerPool, getRecordingSender(), 0, 8);
+
+        for (int i = 0; i < 5; i++) {
+            batcher.enqueue(produceMessage(), "topic" + i);
+        }
+
+        assertEquals(1, deferredTasks.size());
+        assertEquals(5, batcher.getQueueDepth());
+        runDeferredTasks();
+
+        assertEquals(Arrays.asList("topic0", "topic1", "topic2", "topic3", "topic4"), deliveredTopics);
+        assertEquals(1, borrowedPackers);
+        assertEquals(0, batcher.getQueueDepth());
+    }
+
+    @Test
+    public void testEnqueueOnLimitingBatchSize() {
+        batcher = new OutboundBatcher(deferringExecutor, packerPool, getRecordingSender(), 0, 2);
+
+        for (int i = 0; i < 5; i++) {
+            batcher.enqueue(produceMessage(), "topic");
+        }
+
+        runDeferredTasks();
+
+        assertEquals(5, deliveredTopics.size());
+        assertEquals(3, borrowedPackers);
+    }
+
+    @Test
+    public void testEnqueueOnLinger() {
+        batcher = new OutboundBatcher(new ExecutorFake(), packerPool, getRecordingSender(), 10, 8);
+        long start = System.nanoTime();
+
+        batcher.enqueue(produceMessage(), "topic");
+
+        assertTrue(System.nanoTime() - start >= 10 * 1000 * 1000);
+        assertEquals(1, deliveredTopics.size());
+    }
+
+}
@@ -18,21 +18,34 @@
  */
 package org.beamproject.client.model;
 
+import java.io.IOException;
 import org.beamproject.client.BusFake;
 import static org.beamproject.client.Event.SHOW_ADD_CONTACT_LAYER;
 import static org.beamproject.client.Event.SHOW_MAIN_WINDOW;
 import org.beamproject.client.ExecutorFake;
+import org.beamproject.client.storage.ContactStore;
+import org.beamproject.client.storage.StorageCryptor;
 import org.beamproject.client.util.ConfigKey;
+import org.beamproject.common.User;
 import org.beamproject.common.crypto.EncryptedConfig;
 import org.beamproject.common.util.Config;
 import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
 import org.junit.After;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class ChatModelTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private MainModel mainModel;
     private BusFake busFake;
     private Config<ConfigKey> config;
@@ -59,8 +72,18 @@ public class ChatModelTest {
     }
 
     @Test
-    public void testProcessAddContact() {
-//todo
+    public void testAddContact() throws IOException {
+        ContactStore contactStore = new ContactStore(temporaryFolder.newFile());
+        contactStore.open(new StorageCryptor(new byte[StorageCryptor.MASTER_KEY_LENGTH], ContactStore.LABEL));
+        expect(mainModel.getContactStore()).andReturn(contactStore);
+        replay(mainModel);
+        User contact = User.generate();
+
+        model.addContact(contact.getAddress());
+
+        verify(mainModel);
+        assertTrue(contactStore.contains(ContactStore.fingerprint(contact)));
+        assertEquals(SHOW_MAIN_WINDOW, busFake.getNextEvent());
     }
 
     @Test
@@ -21,7 +21,9 @@ package org.beamproject.client.model;
 import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.logging.Logger;
 import org.beamproject.client.BusFake;
 import static org.beamproject.client.Event.UPDATE_CONNECTION_STATUS;
@@ -32,6 +34,7 @@ import org.beamproject.common.Server;
 import org.beamproject.common.Session;
 import org.beamproject.common.User;
 import org.beamproject.common.carrier.ClientCarrier;
+import static org.beamproject.common.carrier.ClientCarrier.MQTT_IN_TOPIC_PREFIX;
 import org.beamproject.common.carrier.MqttConnectionPoolFactory;
 import org.beamproject.common.crypto.CryptoPacker;
 import org.beamproject.common.crypto.CryptoPackerPool;
@@ -41,6 +44,8 @@ import org.beamproject.common.crypto.EncryptedConfig;
 import org.beamproject.common.crypto.HandshakeChallenger;
 import org.beamproject.common.crypto.HandshakeResponder;
 import org.beamproject.common.message.Message;
+import org.beamproject.common.util.Executor;
+import org.beamproject.common.util.Task;
 import static org.easymock.EasyMock.anyObject;
 import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
@@ -55,6 +60,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -119,12 +125,12 @@ public class ConnectionModelTest {
         HashSet<String> alreadyGeneratedUsernames = new HashSet<>();
 
         for (int i = 0; i < 1000; i++) {
-            model.generateRandomMqttUsername();
+            String username = model.generateRandomMqttUsername();
 
-            assertEquals(MQTT_USERNAME_LENGTH, model.mqttUsername.length());
-            assertFalse(alreadyGeneratedUsernames.contains(model.mqttUsername));
+            assertEquals(MQTT_USERNAME_LENGTH, username.length());
+            assertFalse(alreadyGeneratedUsernames.contains(username));
 
-            alreadyGeneratedUsernames.add(model.mqttUsername);
+            alreadyGeneratedUsernames.add(username);
         }
     }
 
@@ -172,6 +178,83 @@ public class ConnectionModelTest {
         assertEquals(UPDATE_CONNECTION_STATUS, busFake.getNextEvent());
     }
     
+    @Test
+    public void testSwitchServerWithoutWantedConnection() {
+        model.switchServer();
+
+        assertNull(model.carrier);
+        assertFalse(model.isConnected());
+    }
+
+    @Test
+    public void testSwitchServer() {
+        ClientCarrier oldCarrier = createMock(ClientCarrier.class);
+        ClientCarrier newCarrier = createMock(ClientCarrier.class);
+        oldCarrier.shutdown();
+        expectLastCall();
+        replay(oldCarrier, newCarrier);
+        instantiateOpening(newCarrier);
+        model.carrier = oldCarrier;
+        model.isConnectionWanted = true;
+
+        model.switchServer();
+
+        verify(oldCarrier, newCarrier);
+        assertSame(newCarrier, model.carrier);
+        assertEquals(MQTT_IN_TOPIC_PREFIX + USERNAME, model.publisherTopic);
+        assertEquals(UPDATE_CONNECTION_STATUS, busFake.getNextEvent());
+    }
+
+    @Test
+    public void testSwitchServerOnUnreachableServer() {
+        ClientCarrier oldCarrier = createMock(ClientCarrier.class);
+        oldCarrier.shutdown();
+        expectLastCall();
+        replay(oldCarrier);
+        instantiateOpening(null);
+        model.carrier = oldCarrier;
+        model.publisherTopic = TOPIC;
+        model.isConnectionWanted = true;
+
+        model.switchServer();
+
+        verify(oldCarrier);
+        assertFalse(model.isConnected());
+        assertEquals(TOPIC, model.publisherTopic); // Not taken from the carrier that failed.
+        assertEquals(UPDATE_CONNECTION_STATUS, busFake.getNextEvent());
+        assertEquals(UPDATE_CONNECTION_STATUS, busFake.getNextEvent()); // The connection is lost.
+    }
+
+    @Test
+    public void testReconnectOnDisconnectWhileOpening() {
+        ClientCarrier oldCarrier = createMock(ClientCarrier.class);
+        final ClientCarrier newCarrier = createMock(ClientCarrier.class);
+        oldCarrier.shutdown();
+        expectLastCall();
+        newCarrier.shutdown();
+        expectLastCall();
+        replay(oldCarrier, newCarrier);
+        replay(config, mainModel);
+        model = new ConnectionModel(mainModel, busFake.getBus(), new QueuingExecutor(), getPackerPool()) {
+            @Override
+            CarrierSetup openCarrier() {
+                disconnect();
+                return new CarrierSetup(newCarrier, null, USERNAME);
+            }
+        };
+        model.log = Logger.getGlobal();
+        model.carrier = oldCarrier;
+        model.publisherTopic = TOPIC;
+        model.isConnectionWanted = true;
+
+        assertTrue(model.reconnect());
+
+        verify(oldCarrier, newCarrier);
+        assertSame(oldCarrier, model.carrier);
+        assertEquals(TOPIC, model.publisherTopic);
+        assertEquals(UPDATE_CONNECTION_STATUS, busFake.getNextEvent()); // By disconnecting.
+    }
+
     @Test
     public void testDisconnect() {
         instantiate();
@@ -200,6 +283,34 @@ public class ConnectionModelTest {
         model.log = Logger.getGlobal();
     }
 
+    /**
+     * Instantiates a model that gets the given carrier when opening a new
+     * connection, and that queues its background tasks without running them.
+     */
+    private void instantiateOpening(final ClientCarrier openedCarrier) {
+        expect(mainModel.getServer()).andReturn(server).anyTimes();
+        expect(mainModel.getUser()).andReturn(USER).anyTimes();
+        replay(config, mainModel);
+
+        model = new ConnectionModel(mainModel, busFake.getBus(), new QueuingExecutor(), getPackerPool()) {
+            @Override
+            CarrierSetup openCarrier() {
+                return openedCarrier != null ? new CarrierSetup(openedCarrier, null, USERNAME) : null;
+            }
+        };
+        model.log = Logger.getGlobal();
+    }
+
+    private static class QueuingExecutor extends Executor {
+
+        private final List<Task> tasks = new ArrayList<>();
+
+        @Override
+        public void runAsync(Task task) {
+            tasks.add(task);
+        }
+    }
+
     private void prepareCarrier() {
         model.carrier = createMock(ClientCarrier.class);
         model.mqttUsername = USERNAME;
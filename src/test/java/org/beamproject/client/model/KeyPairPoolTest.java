@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.model;
+
+import java.security.KeyPair;
+import org.beamproject.client.ExecutorFake;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KeyPairPoolTest {
+
+    private KeyPairPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new KeyPairPool(new ExecutorFake(), 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorOnZeroSize() {
+        new KeyPairPool(new ExecutorFake(), 0);
+    }
+
+    @Test
+    public void testFill() {
+        pool.fill();
+        assertEquals(2, pool.getAvailableKeyPairs());
+
+        pool.fill();
+        assertEquals(2, pool.getAvailableKeyPairs());
+    }
+
+    @Test
+    public void testTake() {
+        pool.fill();
+
+        KeyPair first = pool.take();
+        KeyPair second = pool.take();
+
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNotSame(first, second);
+        assertEquals(0, pool.getAvailableKeyPairs());
+    }
+
+    @Test
+    public void testTakeOnEmptyPool() {
+        assertNotNull(pool.take());
+        assertEquals(0, pool.getAvailableKeyPairs());
+    }
+
+}
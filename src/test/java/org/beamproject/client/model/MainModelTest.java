@@ -18,6 +18,9 @@
  */
 package org.beamproject.client.model;
 
+import com.google.common.io.BaseEncoding;
+import java.io.File;
+import java.nio.file.Path;
 import java.security.Security;
 import java.util.Properties;
 import java.util.logging.Logger;
@@ -26,10 +29,22 @@ import org.beamproject.client.BusFake;
 import static org.beamproject.client.Event.DISPOSE;
 import static org.beamproject.client.Event.ENCRYPTED_CONFIG_UNLOCKED;
 import static org.beamproject.client.Event.SHOW_MAIN_WINDOW;
+import static org.beamproject.client.Event.SHOW_UNLOCK_LAYER;
 import static org.beamproject.client.Event.SHOW_WIZARD_WELCOME_LAYER;
 import static org.beamproject.client.Event.UNLOCK_LAYER_WRONG_PASSWORD;
+import static org.beamproject.client.Event.USER_ADDRESS_CHANGED;
 import org.beamproject.client.ExecutorFake;
+import org.beamproject.client.storage.ChatHistory;
+import org.beamproject.client.storage.ContactStore;
+import org.beamproject.client.storage.ConversationIndex;
+import org.beamproject.client.storage.HistoryLog;
+import org.beamproject.client.storage.SearchIndex;
+import org.beamproject.client.storage.StorageCryptor;
 import org.beamproject.client.util.ConfigKey;
+import org.beamproject.client.util.ConfigPersister;
+import static org.beamproject.client.util.ConfigKey.DATA_KEY;
+import static org.beamproject.client.util.ConfigKey.KDF_ITERATIONS;
+import static org.beamproject.client.util.ConfigKey.KEY_CHECK;
 import static org.beamproject.client.util.ConfigKey.PASSWORD;
 import static org.beamproject.client.util.ConfigKey.SALT;
 import static org.beamproject.client.util.ConfigKey.SERVER_ADDRESS;
@@ -47,6 +62,7 @@ import org.beamproject.common.util.Files;
 import static org.easymock.EasyMock.anyObject;
 import static org.easymock.EasyMock.anyString;
 import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.expectLastCall;
 import static org.easymock.EasyMock.replay;
@@ -56,12 +72,18 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class MainModelTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private final char[] PASSWORD_VALUE = "pass".toCharArray();
     private final byte[] SALT_VALUE = "salt".getBytes();
     private BusFake busFake;
@@ -80,6 +102,17 @@ public class MainModelTest {
         executor = new ExecutorFake();
         model = new MainModel(busFake.getBus(), config, files, executor);
         model.log = Logger.getGlobal();
+        model.configPersister = new ConfigPersister(files) {
+            @Override
+            protected void replace(Path source, Path target) {
+                // The files are only mocked.
+            }
+        };
+        model.contactStore = new ContactStore(new File(temporaryFolder.getRoot(), "contacts.db"));
+        File historyDirectory = new File(temporaryFolder.getRoot(), "history");
+        model.chatHistory = new ChatHistory(new HistoryLog(historyDirectory),
+                new ConversationIndex(new File(historyDirectory, "index")),
+                new SearchIndex(new File(historyDirectory, "search")));
     }
 
     @After
@@ -95,6 +128,67 @@ public class MainModelTest {
         assertTrue(Security.getProvider(PROVIDER_NAME) != null);
     }
 
+    @Test
+    public void testPrepareAndCompleteBootstrap() {
+        model.prepareBootstrap();
+        busFake.verify(); // Nothing is posted before the view is ready.
+
+        model.completeBootstrap();
+        assertEquals(SHOW_WIZARD_WELCOME_LAYER, busFake.getNextEvent());
+    }
+
+    @Test
+    public void testBootstrapWithRememberedPassword() {
+        config.set(SALT, SALT_VALUE);
+        config.set(PASSWORD, Chars.utfCharsToBytes("pass".toCharArray()));
+        expect(files.loadConfigIfAvailable(App.ENCRYPTED_CONFIG_PATH))
+                .andReturn(getFilledEncryptedConfig());
+        replay(files);
+
+        model.bootstrap();
+
+        verify(files);
+        assertNotNull(model.getUser());
+        assertTrue(model.getContactStore().isOpen());
+        assertEquals(ENCRYPTED_CONFIG_UNLOCKED, busFake.getNextEvent());
+        assertEquals(SHOW_MAIN_WINDOW, busFake.getNextEvent());
+    }
+
+    @Test
+    public void testBootstrapOnWrongRememberedPassword() {
+        config.set(SALT, SALT_VALUE);
+        config.set(PASSWORD, Chars.utfCharsToBytes("wrong pass".toCharArray()));
+        expect(files.loadConfigIfAvailable(App.ENCRYPTED_CONFIG_PATH))
+                .andReturn(getFilledEncryptedConfig());
+        replay(files);
+
+        model.readConfigs();
+        model.deriveKey();
+        model.prepareBootstrap();
+        model.completeBootstrap();
+
+        verify(files);
+        assertEquals(SHOW_UNLOCK_LAYER, busFake.getNextEvent());
+        assertEquals(UNLOCK_LAYER_WRONG_PASSWORD, busFake.getNextEvent());
+    }
+
+    @Test
+    public void testUnlockDataAfterReadingConfigs() {
+        config.set(SALT, SALT_VALUE);
+        expect(files.loadConfigIfAvailable(App.ENCRYPTED_CONFIG_PATH))
+                .andReturn(getFilledEncryptedConfig()).once();
+        replay(files);
+
+        model.readConfigs();
+        model.unlockData("wrong pass".toCharArray());
+        model.unlockData(PASSWORD_VALUE);
+
+        verify(files);
+        assertEquals(UNLOCK_LAYER_WRONG_PASSWORD, busFake.getNextEvent());
+        assertEquals(ENCRYPTED_CONFIG_UNLOCKED, busFake.getNextEvent());
+        assertEquals(SHOW_MAIN_WINDOW, busFake.getNextEvent());
+    }
+
     @Test
     public void testIsPasswordRemembered() {
         assertFalse(model.isPasswordRemembered());
@@ -147,10 +241,127 @@ public class MainModelTest {
         verify(files);
         assertNotNull(model.getUser());
         assertNotNull(model.getServer());
+        assertTrue(model.getContactStore().isOpen());
+        assertTrue(model.getChatHistory().isOpen());
+        assertEquals(ENCRYPTED_CONFIG_UNLOCKED, busFake.getNextEvent());
+        assertEquals(SHOW_MAIN_WINDOW, busFake.getNextEvent());
+    }
+
+    @Test
+    public void testUnlockDataWithStretchedPassword() {
+        config.set(SALT, SALT_VALUE);
+        config.set(KDF_ITERATIONS, "1000");
+        encryptedConfig = new EncryptedConfig<>(StorageCryptor.stretchPassword(PASSWORD_VALUE, SALT_VALUE, 1000), SALT_VALUE);
+        expect(files.loadConfigIfAvailable(App.ENCRYPTED_CONFIG_PATH))
+                .andReturn(getFilledEncryptedConfig());
+        replay(files);
+
+        model.unlockData(PASSWORD_VALUE);
+
+        verify(files);
+        assertNotNull(model.getUser());
         assertEquals(ENCRYPTED_CONFIG_UNLOCKED, busFake.getNextEvent());
         assertEquals(SHOW_MAIN_WINDOW, busFake.getNextEvent());
     }
 
+    @Test
+    public void testUnlockDataOnMismatchingKeyCheck() {
+        config.set(SALT, SALT_VALUE);
+        config.set(KDF_ITERATIONS, "1000");
+        encryptedConfig = new EncryptedConfig<>(StorageCryptor.stretchPassword(PASSWORD_VALUE, SALT_VALUE, 1000), SALT_VALUE);
+        Properties encryptedConfigs = getFilledEncryptedConfig();
+        byte[] otherKeyCheck = StorageCryptor.computeKeyCheck("other".toCharArray());
+        encryptedConfigs.setProperty(KEY_CHECK.toString(), BaseEncoding.base64().encode(otherKeyCheck));
+        expect(files.loadConfigIfAvailable(App.ENCRYPTED_CONFIG_PATH)).andReturn(encryptedConfigs);
+        replay(files);
+
+        model.unlockData(PASSWORD_VALUE); // Rejected before decrypting.
+
+        verify(files);
+        assertNull(model.getUser());
+        assertEquals(UNLOCK_LAYER_WRONG_PASSWORD, busFake.getNextEvent());
+    }
+
+    @Test
+    public void testUnlockDataWithKeyCheck() {
+        config.set(SALT, SALT_VALUE);
+        config.set(KDF_ITERATIONS, "1000");
+        char[] stretchedPassword = StorageCryptor.stretchPassword(PASSWORD_VALUE, SALT_VALUE, 1000);
+        encryptedConfig = new EncryptedConfig<>(stretchedPassword, SALT_VALUE);
+        Properties encryptedConfigs = getFilledEncryptedConfig();
+        byte[] keyCheck = StorageCryptor.computeKeyCheck(stretchedPassword);
+        encryptedConfigs.setProperty(KEY_CHECK.toString(), BaseEncoding.base64().encode(keyCheck));
+        expect(files.loadConfigIfAvailable(App.ENCRYPTED_CONFIG_PATH)).andReturn(encryptedConfigs);
+        replay(files);
+
+        model.unlockData(PASSWORD_VALUE);
+
+        verify(files);
+        assertNotNull(model.getUser());
+        assertEquals(ENCRYPTED_CONFIG_UNLOCKED, busFake.getNextEvent());
+        assertEquals(SHOW_MAIN_WINDOW, busFake.getNextEvent());
+    }
+
+    @Test
+    public void testUnlockDataOnInvalidKdfIterations() {
+        config.set(SALT, SALT_VALUE);
+        config.set(KDF_ITERATIONS, "many");
+        replay(files); // The encrypted config is never read.
+
+        model.unlockData(PASSWORD_VALUE);
+
+        verify(files);
+        assertEquals(UNLOCK_LAYER_WRONG_PASSWORD, busFake.getNextEvent());
+    }
+
+    @Test
+    public void testChangePasswordWithStretching() {
+        char[] newPassword = "new pass".toCharArray();
+        config.set(SALT, SALT_VALUE);
+        config.set(KDF_ITERATIONS, "1000");
+        model.setEncryptedConfig(encryptedConfig);
+
+        model.changePassword(newPassword);
+
+        assertArrayEquals(StorageCryptor.stretchPassword(newPassword, SALT_VALUE, 1000), encryptedConfig.getPassword());
+    }
+
+    @Test
+    public void testChangePassword() {
+        char[] newPassword = "new pass".toCharArray();
+        config.set(SALT, SALT_VALUE);
+        model.setEncryptedConfig(encryptedConfig);
+
+        model.changePassword(newPassword);
+
+        assertArrayEquals(newPassword, encryptedConfig.getPassword());
+    }
+
+    @Test
+    public void testOpenLocalStoresCreatesDataKey() {
+        config.set(SALT, SALT_VALUE);
+        model.setEncryptedConfig(encryptedConfig);
+
+        model.openLocalStores();
+
+        assertEquals(StorageCryptor.MASTER_KEY_LENGTH, encryptedConfig.getAsBytes(DATA_KEY).length);
+    }
+
+    @Test
+    public void testOpenLocalStoresAfterPasswordChange() {
+        encryptedConfig.set(DATA_KEY, StorageCryptor.generateMasterKey());
+        model.setEncryptedConfig(encryptedConfig);
+        model.openLocalStores();
+        model.getContactStore().add(User.generate());
+        model.getContactStore().close();
+        model.getChatHistory().close();
+
+        encryptedConfig.changePassword("new pass".toCharArray());
+        model.openLocalStores();
+
+        assertEquals(1, model.getContactStore().size());
+    }
+
     private Properties getFilledEncryptedConfig() {
         Server server = Server.generate();
         User user = User.generate();
@@ -170,6 +381,20 @@ public class MainModelTest {
 
     @Test
     public void testStoreConfigs() {
+        encryptedConfig.set(PASSWORD, "myPassword");
+        final Properties encryptedConfigs = encryptedConfig.copyToProperties();
+
+        files.storeProperies(anyObject(Properties.class), anyString());
+
+        expectLastCall().andDelegateTo(new Files() {
+            @Override
+            public void storeProperies(Properties p, String path) {
+                assertEquals(encryptedConfigs.getProperty(PASSWORD.toString()),
+                        p.getProperty(PASSWORD.toString()));
+                assertEquals(App.ENCRYPTED_CONFIG_PATH + ConfigPersister.TEMPORARY_SUFFIX, path);
+            }
+        });
+
         config.set(SALT, "mySalt");
         final Properties configs = config.copyToProperties();
 
@@ -180,23 +405,33 @@ public class MainModelTest {
             public void storeProperies(Properties p, String path) {
                 assertEquals(configs.getProperty(SALT.toString()),
                         p.getProperty(SALT.toString()));
-                assertEquals(App.CONFIG_PATH, path);
+                assertEquals(App.CONFIG_PATH + ConfigPersister.TEMPORARY_SUFFIX, path);
             }
         });
+        replay(files);
 
-        encryptedConfig.set(PASSWORD, "myPassword");
-        final Properties encryptedConfigs = encryptedConfig.copyToProperties();
+        model.setEncryptedConfig(encryptedConfig);
+        model.storeConfigs();
 
-        files.storeProperies(anyObject(Properties.class), anyString());
+        verify(files);
+    }
 
+    @Test
+    public void testStoreConfigsWithKeyCheck() {
+        config.set(SALT, SALT_VALUE);
+        config.set(KDF_ITERATIONS, "1000");
+        final char[] stretchedPassword = StorageCryptor.stretchPassword(PASSWORD_VALUE, SALT_VALUE, 1000);
+        encryptedConfig = new EncryptedConfig<>(stretchedPassword, SALT_VALUE);
+
+        files.storeProperies(anyObject(Properties.class), eq(App.ENCRYPTED_CONFIG_PATH + ConfigPersister.TEMPORARY_SUFFIX));
         expectLastCall().andDelegateTo(new Files() {
             @Override
             public void storeProperies(Properties p, String path) {
-                assertEquals(encryptedConfigs.getProperty(PASSWORD.toString()),
-                        p.getProperty(PASSWORD.toString()));
-                assertEquals(App.ENCRYPTED_CONFIG_PATH, path);
+                byte[] keyCheck = StorageCryptor.computeKeyCheck(stretchedPassword);
+                assertEquals(BaseEncoding.base64().encode(keyCheck), p.getProperty(KEY_CHECK.toString()));
             }
         });
+        files.storeProperies(anyObject(Properties.class), eq(App.CONFIG_PATH + ConfigPersister.TEMPORARY_SUFFIX));
         replay(files);
 
         model.setEncryptedConfig(encryptedConfig);
@@ -205,6 +440,23 @@ public class MainModelTest {
         verify(files);
     }
 
+    @Test
+    public void testStoreConfigsOnlyWhenChanged() {
+        files.storeProperies(anyObject(Properties.class), eq(App.CONFIG_PATH + ConfigPersister.TEMPORARY_SUFFIX));
+        expectLastCall().times(2);
+        files.storeProperies(anyObject(Properties.class), eq(App.ENCRYPTED_CONFIG_PATH + ConfigPersister.TEMPORARY_SUFFIX));
+        expectLastCall().once();
+        replay(files);
+
+        model.setEncryptedConfig(encryptedConfig);
+        model.storeConfigs();
+        model.storeConfigs();
+        config.set(SALT, "newSalt");
+        model.storeConfigs();
+
+        verify(files);
+    }
+
     @Test
     public void testSetUsername() {
         User user = User.generate();
@@ -218,6 +470,22 @@ public class MainModelTest {
         assertEquals(name, encryptedConfig.getAsString(USERNAME));
     }
 
+    @Test
+    public void testSetUsernameStoresConfigsLater() {
+        User user = User.generate();
+        model.setUser(user);
+        model.setEncryptedConfig(encryptedConfig);
+        files.storeProperies(anyObject(Properties.class), anyString());
+        expectLastCall().times(2);
+        replay(files);
+
+        model.setUsername("first");
+        model.setUsername("second");
+        model.flushConfigs();
+
+        verify(files);
+    }
+
     @Test
     public void testRememberPassword() {
         model.setEncryptedConfig(encryptedConfig);
@@ -296,4 +564,30 @@ public class MainModelTest {
         assertEquals(DISPOSE, busFake.getNextEvent());
     }
 
+    @Test
+    public void testRestart() {
+        getFilledEncryptedConfig();
+        model.setEncryptedConfig(encryptedConfig);
+        Server newServer = Server.generate();
+        encryptedConfig.set(SERVER_ADDRESS, newServer.getAddress());
+        ConnectionModel connectionModel = createMock(ConnectionModel.class);
+        connectionModel.switchServer();
+        expectLastCall();
+        replay(connectionModel);
+        model.connectionModel = connectionModel;
+
+        model.restart();
+
+        assertEquals(newServer.getAddress(), model.getServer().getAddress());
+        assertEquals(USER_ADDRESS_CHANGED, busFake.getNextEvent());
+        assertEquals(SHOW_MAIN_WINDOW, busFake.getNextEvent());
+        assertFalse(areAllValuesZeros(encryptedConfig.getPassword()));
+        verify(connectionModel);
+    }
+
+    @Test
+    public void testRestartWithoutConfigs() {
+        model.restart();
+    }
+
 }
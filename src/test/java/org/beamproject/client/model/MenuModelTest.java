@@ -72,7 +72,7 @@ public class MenuModelTest {
         char[] oldPassword = "old password".toCharArray();
         char[] enteredOldPassword = "entered old password".toCharArray();
         char[] newPassword = "new password".toCharArray();
-        setUpPasswordChangeMocks(oldPassword, newPassword, false);
+        setUpPasswordChangeMocks(enteredOldPassword, oldPassword, newPassword, false);
 
         model.processPasswordChange(enteredOldPassword, newPassword);
 
@@ -84,7 +84,7 @@ public class MenuModelTest {
     public void testProcessPasswordChange() {
         char[] oldPassword = "old password".toCharArray();
         char[] newPassword = "new password".toCharArray();
-        setUpPasswordChangeMocks(oldPassword, newPassword, true);
+        setUpPasswordChangeMocks(oldPassword, oldPassword, newPassword, true);
 
         model.processPasswordChange(oldPassword, newPassword);
 
@@ -92,17 +92,27 @@ public class MenuModelTest {
         assertEquals(SHOW_MAIN_WINDOW, busFake.getNextEvent());
     }
 
+    @Test
+    public void testProcessPasswordChangeOnInvalidKdfParameters() {
+        char[] oldPassword = "old password".toCharArray();
+        expect(mainModel.toConfigPassword(oldPassword)).andThrow(new IllegalArgumentException("out of range"));
+        replay(mainModel);
+
+        model.processPasswordChange(oldPassword, "new password".toCharArray());
+
+        verify(mainModel);
+        assertEquals(PASSWORD_CHANGE_WRONG_PASSWORD, busFake.getNextEvent());
+    }
+
     @SuppressWarnings("unchecked")
-    private void setUpPasswordChangeMocks(char[] oldPassword, char[] newPassword, boolean isPassswordCorrect) {
+    private void setUpPasswordChangeMocks(char[] enteredOldPassword, char[] oldPassword, char[] newPassword, boolean isPassswordCorrect) {
         encryptedConfig = createMock(EncryptedConfig.class);
+        expect(mainModel.toConfigPassword(enteredOldPassword)).andReturn(enteredOldPassword);
         expect(mainModel.getEncryptedConfig()).andReturn(encryptedConfig);
         expect(encryptedConfig.getPassword()).andReturn(oldPassword);
 
         if (isPassswordCorrect) {
-            expect(mainModel.getEncryptedConfig()).andReturn(encryptedConfig);
-            encryptedConfig.changePassword(newPassword);
-            expectLastCall();
-            mainModel.storeConfigs();
+            mainModel.changePassword(newPassword);
             expectLastCall();
         }
 
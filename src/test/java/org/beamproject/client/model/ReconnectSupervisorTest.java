@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.model;
+
+import org.beamproject.client.ExecutorFake;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class ReconnectSupervisorTest {
+
+    private ReconnectSupervisor supervisor;
+    private int attempts;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorOnSwappedDelays() {
+        new ReconnectSupervisor(new ExecutorFake(), getConnector(0), 100, 10);
+    }
+
+    @Test
+    public void testComputeDelay() {
+        supervisor = new ReconnectSupervisor(new ExecutorFake(), getConnector(0), 100, 1000);
+
+        for (int i = 0; i < 100; i++) {
+            long first = supervisor.computeDelay(0);
+            long third = supervisor.computeDelay(2);
+            long capped = supervisor.computeDelay(50);
+
+            assertTrue(first >= 50 && first <= 100);
+            assertTrue(third >= 200 && third <= 400);
+            assertTrue(capped >= 500 && capped <= 1000);
+        }
+    }
+
+    @Test
+    public void testConnectionLost() {
+        supervisor = new ReconnectSupervisor(new ExecutorFake(), getConnector(2), 0, 0);
+
+        supervisor.connectionLost();
+
+        assertEquals(3, attempts);
+        assertFalse(supervisor.isReconnecting());
+    }
+
+    @Test
+    public void testCancel() {
+        supervisor = new ReconnectSupervisor(new ExecutorFake(), new ReconnectSupervisor.Connector() {
+            @Override
+            public boolean reconnect() {
+                attempts++;
+                supervisor.cancel();
+                return false;
+            }
+        }, 0, 0);
+
+        supervisor.connectionLost();
+
+        assertEquals(1, attempts);
+        assertFalse(supervisor.isReconnecting());
+    }
+
+    private ReconnectSupervisor.Connector getConnector(final int failures) {
+        return new ReconnectSupervisor.Connector() {
+            @Override
+            public boolean reconnect() {
+                return ++attempts > failures;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.model;
+
+import java.io.File;
+import static org.beamproject.client.model.MainModel.AcceptedSender.EVERYONE;
+import org.beamproject.client.storage.ContactStore;
+import org.beamproject.client.storage.StorageCryptor;
+import org.beamproject.common.Server;
+import org.beamproject.common.User;
+import org.beamproject.common.crypto.HandshakeChallenger;
+import static org.beamproject.common.message.Field.Cnt.TypeValue.HS_CHALLENGE;
+import static org.beamproject.common.message.Field.Cnt.TypeValue.HS_RESPONSE;
+import org.beamproject.common.message.Message;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SenderFilterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private final Server server = Server.generate();
+    private ContactStore contactStore;
+    private SenderFilter filter;
+    private User contact;
+    private User stranger;
+
+    @Before
+    public void setUp() {
+        contactStore = new ContactStore(new File(temporaryFolder.getRoot(), "contacts.db"));
+        contactStore.open(new StorageCryptor(new byte[StorageCryptor.MASTER_KEY_LENGTH], ContactStore.LABEL));
+        filter = new SenderFilter(HS_RESPONSE);
+        filter.setContactStore(contactStore);
+        contact = User.generate();
+        stranger = User.generate();
+        contactStore.add(contact);
+    }
+
+    @Test
+    public void testAcceptsContact() {
+        assertTrue(filter.accepts(produceMessageFrom(contact)));
+    }
+
+    @Test
+    public void testAcceptsOnStranger() {
+        assertFalse(filter.accepts(produceMessageFrom(stranger)));
+    }
+
+    @Test
+    public void testAcceptsOnStrangerWhenEveryoneIsAccepted() {
+        filter.setAcceptedSender(EVERYONE);
+        assertTrue(filter.accepts(produceMessageFrom(stranger)));
+    }
+
+    @Test
+    public void testAcceptsOnExemptType() {
+        SenderFilter challengeFilter = new SenderFilter(HS_CHALLENGE);
+        assertTrue(challengeFilter.accepts(produceMessageFrom(stranger)));
+    }
+
+    @Test
+    public void testIsContactAfterAddingContact() {
+        assertFalse(filter.isContact(ContactStore.fingerprint(stranger)));
+
+        contactStore.add(stranger);
+
+        assertTrue(filter.isContact(ContactStore.fingerprint(stranger)));
+    }
+
+    @Test
+    public void testIsContactAfterRemovingContact() {
+        assertTrue(filter.isContact(ContactStore.fingerprint(contact)));
+
+        contactStore.remove(ContactStore.fingerprint(contact));
+
+        assertFalse(filter.isContact(ContactStore.fingerprint(contact)));
+    }
+
+    @Test
+    public void testIsContactOnLockedStore() {
+        contactStore.close();
+        assertFalse(filter.isContact(ContactStore.fingerprint(contact)));
+    }
+
+    @Test
+    public void testIsContactWithoutStore() {
+        assertFalse(new SenderFilter().isContact(ContactStore.fingerprint(contact)));
+    }
+
+    private Message produceMessageFrom(User sender) {
+        return new HandshakeChallenger(sender).produceChallenge(server);
+    }
+
+}
@@ -38,6 +38,7 @@ import org.beamproject.common.crypto.EccKeyPairGenerator;
 import org.beamproject.common.crypto.EncryptedConfig;
 import org.beamproject.common.util.Config;
 import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.anyString;
 import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expectLastCall;
 import static org.easymock.EasyMock.replay;
@@ -118,12 +119,16 @@ public class WizardModelTest {
         expectLastCall();
         mainModel.setEncryptedConfig(anyObject(EncryptedConfig.class));
         expectLastCall();
+        mainModel.openLocalStores();
+        expectLastCall();
         mainModel.rememberPassword(rememberPassword);
         expectLastCall();
         mainModel.storeConfigs();
         expectLastCall();
         config.set(anyObject(SALT.getClass()), anyObject(byte[].class));
-        expectLastCall();
+        expectLastCall(); // The salt.
+        config.set(anyObject(SALT.getClass()), anyString());
+        expectLastCall(); // The calibrated key derivation iterations.
 
         replay(mainModel, config);
 
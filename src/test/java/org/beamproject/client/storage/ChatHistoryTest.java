@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.storage;
+
+import java.io.File;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChatHistoryTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private final static int SEGMENT_SIZE = 512;
+    private final static String CONTACT = "fingerprint";
+    private final static String OTHER_CONTACT = "other fingerprint";
+    private File directory;
+    private StorageCryptor logCryptor;
+    private StorageCryptor indexCryptor;
+    private StorageCryptor searchCryptor;
+    private ChatHistory history;
+
+    @Before
+    public void setUp() {
+        directory = new File(temporaryFolder.getRoot(), "history");
+        logCryptor = new StorageCryptor(new byte[StorageCryptor.MASTER_KEY_LENGTH], HistoryLog.LABEL);
+        indexCryptor = new StorageCryptor(new byte[StorageCryptor.MASTER_KEY_LENGTH], ConversationIndex.LABEL);
+        searchCryptor = new StorageCryptor(new byte[StorageCryptor.MASTER_KEY_LENGTH], SearchIndex.LABEL);
+        history = openHistory();
+    }
+
+    private ChatHistory openHistory() {
+        ChatHistory newHistory = new ChatHistory(new HistoryLog(directory, SEGMENT_SIZE),
+                new ConversationIndex(new File(directory, "index")),
+                new SearchIndex(new File(directory, "search")));
+        newHistory.open(logCryptor, indexCryptor, searchCryptor);
+        return newHistory;
+    }
+
+    @Test
+    public void testOpenAndClose() {
+        assertTrue(history.isOpen());
+        history.close();
+        assertFalse(history.isOpen());
+    }
+
+    @Test
+    public void testAppendAndLoadLatest() {
+        for (int i = 0; i < 10; i++) {
+            history.append(i, i % 2 == 0 ? CONTACT : OTHER_CONTACT, true, "message " + i);
+        }
+
+        List<HistoryEntry> latest = history.loadLatest(CONTACT, 3);
+
+        assertEquals(5, history.count(CONTACT));
+        assertEquals(3, latest.size());
+        assertEquals("message 4", latest.get(0).getText());
+        assertEquals("message 6", latest.get(1).getText());
+        assertEquals("message 8", latest.get(2).getText());
+    }
+
+    @Test
+    public void testLoadBefore() {
+        for (int i = 0; i < 5; i++) {
+            history.append(i, CONTACT, false, "message " + i);
+        }
+
+        List<HistoryEntry> page = history.loadBefore(CONTACT, 2, 10);
+
+        assertEquals(2, page.size());
+        assertEquals("message 0", page.get(0).getText());
+        assertEquals("message 1", page.get(1).getText());
+        assertTrue(history.loadBefore(CONTACT, 0, 10).isEmpty());
+    }
+
+    @Test
+    public void testOpenIndexesMissingEntries() {
+        history.append(0, CONTACT, true, "indexed");
+        history.close();
+
+        HistoryLog log = new HistoryLog(directory, SEGMENT_SIZE);
+        log.open(logCryptor);
+        log.append(1, CONTACT, true, "not indexed");
+        log.append(2, OTHER_CONTACT, true, "not indexed either");
+        log.close();
+
+        history = openHistory();
+
+        assertEquals(2, history.count(CONTACT));
+        assertEquals(1, history.count(OTHER_CONTACT));
+        assertEquals("not indexed", history.loadLatest(CONTACT, 1).get(0).getText());
+        assertEquals(3, history.search("indexed", 10).size());
+    }
+
+    @Test
+    public void testSearch() {
+        history.append(0, CONTACT, true, "Hello world");
+        history.append(1, OTHER_CONTACT, false, "hello again");
+        history.append(2, CONTACT, true, "bye");
+
+        List<HistoryEntry> results = history.search("HELLO", 10);
+
+        assertEquals(2, results.size());
+        assertEquals("hello again", results.get(0).getText());
+        assertEquals("Hello world", results.get(1).getText());
+        assertTrue(history.search("hello bye", 10).isEmpty());
+    }
+
+    @Test
+    public void testOpenOnEmptyIndex() {
+        history.append(0, CONTACT, true, "first");
+        history.append(1, CONTACT, true, "second");
+        history.close();
+
+        for (File file : new File(directory, "index").listFiles()) {
+            file.delete();
+        }
+
+        history = openHistory();
+
+        assertEquals(2, history.count(CONTACT));
+    }
+
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.storage;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import org.beamproject.common.User;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ContactStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private final byte[] MASTER_KEY = new byte[StorageCryptor.MASTER_KEY_LENGTH];
+    private File file;
+    private ContactStore store;
+    private User contact;
+
+    @Before
+    public void setUp() {
+        file = new File(temporaryFolder.getRoot(), "contacts.db");
+        store = openStore();
+        contact = User.generate();
+    }
+
+    private ContactStore openStore() {
+        ContactStore newStore = new ContactStore(file);
+        newStore.open(new StorageCryptor(MASTER_KEY, ContactStore.LABEL));
+        return newStore;
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testContainsOnLockedStore() {
+        new ContactStore(file).contains("fingerprint");
+    }
+
+    @Test
+    public void testAdd() {
+        assertTrue(store.add(contact));
+        assertFalse(store.add(contact));
+
+        assertEquals(1, store.size());
+        assertTrue(store.contains(ContactStore.fingerprint(contact)));
+        assertEquals(contact.getAddress(), store.get(ContactStore.fingerprint(contact)).getAddress());
+    }
+
+    @Test
+    public void testAddIsPersisted() {
+        store.add(contact);
+        store.add(User.generate());
+
+        ContactStore reopenedStore = openStore();
+
+        assertEquals(2, reopenedStore.size());
+        assertTrue(reopenedStore.contains(ContactStore.fingerprint(contact)));
+    }
+
+    @Test
+    public void testAddAppendsOnly() {
+        store.add(contact);
+        long lengthAfterFirst = file.length();
+
+        store.add(User.generate());
+
+        assertTrue(file.length() > lengthAfterFirst);
+        assertTrue(file.length() < 3 * lengthAfterFirst);
+    }
+
+    @Test
+    public void testRemove() {
+        store.add(contact);
+
+        assertTrue(store.remove(ContactStore.fingerprint(contact)));
+        assertFalse(store.remove(ContactStore.fingerprint(contact)));
+        assertFalse(store.contains(ContactStore.fingerprint(contact)));
+        assertFalse(openStore().contains(ContactStore.fingerprint(contact)));
+    }
+
+    @Test
+    public void testLoadOnIncompleteRecord() throws Exception {
+        store.add(contact);
+        long validLength = file.length();
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(validLength);
+            randomAccessFile.writeInt(200);
+            randomAccessFile.write(new byte[10]);
+        }
+
+        ContactStore reopenedStore = openStore();
+        assertEquals(1, reopenedStore.size());
+        assertEquals(validLength, file.length());
+
+        reopenedStore.add(User.generate());
+        assertEquals(2, openStore().size());
+    }
+
+    @Test
+    public void testLoadOnInvalidRecordLength() throws Exception {
+        store.add(contact);
+        store.add(User.generate());
+        long length = file.length();
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.writeInt(StorageCryptor.OVERHEAD - 1);
+        }
+
+        try {
+            openStore().size();
+            fail("The invalid record length should have been detected.");
+        } catch (IllegalStateException ex) {
+            assertEquals(length, file.length());
+        }
+    }
+
+    @Test
+    public void testLoadReadsCorruptFileOnlyOnce() throws Exception {
+        store.add(contact);
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.writeInt(StorageCryptor.OVERHEAD - 1);
+        }
+
+        ContactStore reopenedStore = openStore();
+        String fingerprint = ContactStore.fingerprint(contact);
+
+        try {
+            reopenedStore.contains(fingerprint);
+            fail("The invalid record length should have been detected.");
+        } catch (IllegalStateException ex) {
+            assertTrue(file.delete());
+        }
+
+        try {
+            reopenedStore.contains(fingerprint); // Would succeed if read again.
+            fail("The failure should have been remembered.");
+        } catch (IllegalStateException ex) {
+            assertFalse(file.exists());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testLoadOnWrongKey() {
+        store.add(contact);
+
+        ContactStore otherStore = new ContactStore(file);
+        otherStore.open(new StorageCryptor(new byte[]{1, 2, 3}, ContactStore.LABEL));
+        otherStore.load();
+    }
+
+    @Test
+    public void testClose() {
+        store.add(contact);
+        store.close();
+
+        assertFalse(store.isOpen());
+    }
+
+    @Test
+    public void testFingerprint() {
+        String fingerprint = ContactStore.fingerprint(contact);
+
+        assertEquals(64, fingerprint.length());
+        assertEquals(fingerprint, ContactStore.fingerprint(contact.getPublicKeyAsBytes()));
+    }
+
+}
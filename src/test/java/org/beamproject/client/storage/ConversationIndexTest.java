@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.storage;
+
+import com.google.common.primitives.Bytes;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import static org.beamproject.client.storage.HistoryLog.NO_POSITION;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ConversationIndexTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private final static String CONTACT = "fingerprint";
+    private final static String OTHER_CONTACT = "other fingerprint";
+    private File directory;
+    private StorageCryptor cryptor;
+    private ConversationIndex index;
+
+    @Before
+    public void setUp() {
+        directory = new File(temporaryFolder.getRoot(), "index");
+        cryptor = new StorageCryptor(new byte[StorageCryptor.MASTER_KEY_LENGTH], ConversationIndex.LABEL);
+        index = new ConversationIndex(directory);
+        index.open(cryptor);
+    }
+
+    private HistoryEntry entry(long sequence, long position, String contact) {
+        return new HistoryEntry(sequence, position, 0, contact, true, "");
+    }
+
+    private File getIndexFile(String contact) {
+        return new File(directory, cryptor.deriveName(contact) + ".index");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCountOnLockedIndex() {
+        index.close();
+        index.count(CONTACT);
+    }
+
+    @Test
+    public void testOpenAndClose() {
+        assertTrue(index.isOpen());
+        index.close();
+        assertFalse(index.isOpen());
+    }
+
+    @Test
+    public void testAddAndCount() {
+        index.add(entry(0, 0, CONTACT));
+        index.add(entry(1, 50, OTHER_CONTACT));
+        index.add(entry(2, 100, CONTACT));
+
+        assertEquals(2, index.count(CONTACT));
+        assertEquals(1, index.count(OTHER_CONTACT));
+        assertEquals(0, index.count("unknown"));
+    }
+
+    @Test
+    public void testFileNamesDoNotRevealContacts() {
+        index.add(entry(0, 0, CONTACT));
+
+        for (File file : directory.listFiles()) {
+            assertFalse(file.getName().contains(CONTACT));
+        }
+    }
+
+    @Test
+    public void testEntriesAreEncrypted() throws Exception {
+        index.add(entry(0x0102030405060708L, 0x1112131415161718L, CONTACT));
+        byte[] sequence = ByteBuffer.allocate(8).putLong(0x0102030405060708L).array();
+        byte[] position = ByteBuffer.allocate(8).putLong(0x1112131415161718L).array();
+
+        for (File file : directory.listFiles()) {
+            byte[] content = Files.readAllBytes(file.toPath());
+            assertEquals(-1, Bytes.indexOf(content, sequence));
+            assertEquals(-1, Bytes.indexOf(content, position));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReadPositionsWithOtherKey() {
+        index.add(entry(0, 0, CONTACT));
+        byte[] otherKey = new byte[StorageCryptor.MASTER_KEY_LENGTH];
+        otherKey[0] = 1;
+        StorageCryptor otherCryptor = new StorageCryptor(otherKey, ConversationIndex.LABEL);
+        assertTrue(getIndexFile(CONTACT).renameTo(new File(directory, otherCryptor.deriveName(CONTACT) + ".index")));
+
+        index.open(otherCryptor);
+        index.readPositions(CONTACT, 0, 1);
+    }
+
+    @Test
+    public void testReadPositions() {
+        for (int i = 0; i < 5; i++) {
+            index.add(entry(i, i * 10, CONTACT));
+        }
+
+        assertArrayEquals(new long[]{10, 20, 30}, index.readPositions(CONTACT, 1, 3));
+        assertArrayEquals(new long[]{30, 40}, index.readPositions(CONTACT, 3, 10));
+        assertArrayEquals(new long[0], index.readPositions(CONTACT, 5, 10));
+        assertArrayEquals(new long[0], index.readPositions("unknown", 0, 10));
+    }
+
+    @Test
+    public void testGetLastIndexedPosition() {
+        assertEquals(NO_POSITION, index.getLastIndexedPosition());
+
+        index.add(entry(0, 0, CONTACT));
+        index.add(entry(1, 50, OTHER_CONTACT));
+        index.add(entry(2, 100, CONTACT));
+        assertEquals(100, index.getLastIndexedPosition());
+
+        index.add(entry(3, 150, OTHER_CONTACT));
+        assertEquals(150, index.getLastIndexedPosition());
+    }
+
+    @Test
+    public void testOpenReadsOnlyCheckpoint() throws Exception {
+        index.add(entry(0, 0, CONTACT));
+        index.add(entry(1, 50, OTHER_CONTACT));
+
+        try (RandomAccessFile access = new RandomAccessFile(getIndexFile(CONTACT), "rw")) {
+            access.writeLong(42);
+        }
+
+        index = new ConversationIndex(directory);
+        index.open(cryptor);
+
+        assertEquals(50, index.getLastIndexedPosition());
+    }
+
+    @Test
+    public void testOpenCreatesMissingCheckpoint() {
+        index.add(entry(0, 0, CONTACT));
+        index.add(entry(1, 50, OTHER_CONTACT));
+        index.add(entry(2, 100, CONTACT));
+        index.close();
+        assertTrue(new File(directory, "checkpoint").delete());
+
+        index.open(cryptor);
+
+        assertEquals(100, index.getLastIndexedPosition());
+        assertTrue(new File(directory, "checkpoint").exists());
+    }
+
+    @Test
+    public void testAddMissing() {
+        index.add(entry(0, 0, CONTACT));
+        index.add(entry(1, 50, OTHER_CONTACT));
+
+        index.addMissing(entry(1, 50, OTHER_CONTACT));
+        index.addMissing(entry(2, 100, CONTACT));
+
+        assertEquals(2, index.count(CONTACT));
+        assertEquals(1, index.count(OTHER_CONTACT));
+        assertEquals(100, index.getLastIndexedPosition());
+    }
+
+    @Test
+    public void testOpenTruncatesIncompleteEntries() throws Exception {
+        index.add(entry(0, 0, CONTACT));
+        index.add(entry(1, 50, CONTACT));
+        File file = getIndexFile(CONTACT);
+
+        try (RandomAccessFile access = new RandomAccessFile(file, "rw")) {
+            access.setLength(file.length() - 3);
+        }
+
+        index.open(cryptor);
+
+        assertEquals(1, index.count(CONTACT));
+        assertArrayEquals(new long[]{0}, index.readPositions(CONTACT, 0, 10));
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.storage;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import static org.beamproject.client.storage.HistoryLog.NO_POSITION;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HistoryLogTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private final static int SEGMENT_SIZE = 512;
+    private final static String CONTACT = "fingerprint";
+    private File directory;
+    private StorageCryptor cryptor;
+    private HistoryLog log;
+
+    @Before
+    public void setUp() {
+        directory = new File(temporaryFolder.getRoot(), "history");
+        cryptor = new StorageCryptor(new byte[StorageCryptor.MASTER_KEY_LENGTH], HistoryLog.LABEL);
+        log = openLog();
+    }
+
+    private HistoryLog openLog() {
+        HistoryLog newLog = new HistoryLog(directory, SEGMENT_SIZE);
+        newLog.open(cryptor);
+        return newLog;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorOnTooSmallSegmentSize() {
+        new HistoryLog(directory, StorageCryptor.OVERHEAD);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAppendOnLockedLog() {
+        new HistoryLog(directory, SEGMENT_SIZE).append(1, CONTACT, true, "hello");
+    }
+
+    @Test
+    public void testAppendAndRead() {
+        HistoryEntry appended = log.append(1000, CONTACT, true, "hello");
+        HistoryEntry read = log.read(appended.getPosition());
+
+        assertEquals(0, read.getSequence());
+        assertEquals(1000, read.getTimestamp());
+        assertEquals(CONTACT, read.getContact());
+        assertTrue(read.isIncoming());
+        assertEquals("hello", read.getText());
+        assertEquals(1, log.getNextSequence());
+    }
+
+    @Test
+    public void testAppendStartsNewSegments() {
+        for (int i = 0; i < 20; i++) {
+            log.append(i, CONTACT, i % 2 == 0, "message number " + i);
+        }
+
+        File[] segments = directory.listFiles();
+        assertTrue(segments.length > 1);
+
+        for (File segment : segments) {
+            assertTrue(segment.length() <= SEGMENT_SIZE);
+        }
+    }
+
+    @Test
+    public void testNextPositionWalksAllEntries() {
+        assertEquals(NO_POSITION, log.getFirstPosition());
+
+        for (int i = 0; i < 20; i++) {
+            log.append(i, CONTACT, false, "message number " + i);
+        }
+
+        int count = 0;
+
+        for (long position = log.getFirstPosition(); position != NO_POSITION; position = log.nextPosition(position)) {
+            assertEquals(count, log.read(position).getSequence());
+            count++;
+        }
+
+        assertEquals(20, count);
+    }
+
+    @Test
+    public void testOpenContinuesSequence() {
+        for (int i = 0; i < 20; i++) {
+            log.append(i, CONTACT, false, "message number " + i);
+        }
+
+        log.close();
+        HistoryLog reopenedLog = openLog();
+        HistoryEntry entry = reopenedLog.append(20, CONTACT, false, "after reopening");
+
+        assertEquals(20, entry.getSequence());
+        assertEquals("after reopening", reopenedLog.read(entry.getPosition()).getText());
+    }
+
+    @Test
+    public void testOpenOnIncompleteRecord() throws Exception {
+        log.append(1, CONTACT, false, "complete");
+        log.close();
+        File segment = directory.listFiles()[0];
+        long validLength = segment.length();
+
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(validLength);
+            file.writeInt(100);
+            file.write(new byte[5]);
+        }
+
+        HistoryLog reopenedLog = openLog();
+
+        assertEquals(validLength, segment.length());
+        assertEquals(1, reopenedLog.append(2, CONTACT, false, "next").getSequence());
+    }
+
+    @Test
+    public void testReadWhileAppending() {
+        HistoryEntry first = log.append(1, CONTACT, false, "first");
+        log.read(first.getPosition());
+        HistoryEntry second = log.append(2, CONTACT, false, "second");
+
+        assertEquals("second", log.read(second.getPosition()).getText());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReadOnMissingRecord() {
+        log.append(1, CONTACT, false, "first");
+        log.read(SEGMENT_SIZE * 3);
+    }
+
+    @Test
+    public void testClose() {
+        log.close();
+        assertFalse(log.isOpen());
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.storage;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import static org.beamproject.client.storage.HistoryLog.NO_POSITION;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IndexCheckpointTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private File file;
+    private StorageCryptor cryptor;
+    private IndexCheckpoint checkpoint;
+
+    @Before
+    public void setUp() {
+        file = new File(temporaryFolder.getRoot(), "checkpoint");
+        cryptor = new StorageCryptor(new byte[StorageCryptor.MASTER_KEY_LENGTH], "test");
+        checkpoint = new IndexCheckpoint(file);
+    }
+
+    @Test
+    public void testReadOnMissingFile() {
+        checkpoint.read(cryptor);
+
+        assertEquals(-1, checkpoint.getLastSequence());
+        assertEquals(NO_POSITION, checkpoint.getLastPosition());
+    }
+
+    @Test
+    public void testWriteAndRead() {
+        checkpoint.write(cryptor, 0, 0);
+        checkpoint.write(cryptor, 1, 100);
+        checkpoint.write(cryptor, 2, 200);
+
+        checkpoint = new IndexCheckpoint(file);
+        checkpoint.read(cryptor);
+
+        assertEquals(2, checkpoint.getLastSequence());
+        assertEquals(200, checkpoint.getLastPosition());
+    }
+
+    @Test
+    public void testReadOnInterruptedWrite() throws Exception {
+        checkpoint.write(cryptor, 0, 0);
+        checkpoint.write(cryptor, 1, 100);
+
+        try (RandomAccessFile access = new RandomAccessFile(file, "rw")) {
+            access.seek(file.length() - 1);
+            int lastByte = access.read();
+            access.seek(file.length() - 1);
+            access.write(lastByte ^ 1);
+        }
+
+        checkpoint.read(cryptor);
+
+        assertEquals(0, checkpoint.getLastSequence());
+        assertEquals(0, checkpoint.getLastPosition());
+
+        checkpoint.write(cryptor, 1, 100);
+        checkpoint.read(cryptor);
+
+        assertEquals(100, checkpoint.getLastPosition());
+    }
+
+    @Test
+    public void testReset() {
+        checkpoint.write(cryptor, 1, 100);
+        checkpoint.reset();
+
+        assertEquals(-1, checkpoint.getLastSequence());
+        assertEquals(NO_POSITION, checkpoint.getLastPosition());
+    }
+
+}
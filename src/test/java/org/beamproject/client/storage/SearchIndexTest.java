@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.storage;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import static org.beamproject.client.storage.HistoryLog.NO_POSITION;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SearchIndexTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private File directory;
+    private StorageCryptor cryptor;
+    private SearchIndex index;
+
+    @Before
+    public void setUp() {
+        directory = new File(temporaryFolder.getRoot(), "search");
+        cryptor = new StorageCryptor(new byte[StorageCryptor.MASTER_KEY_LENGTH], SearchIndex.LABEL);
+        index = new SearchIndex(directory);
+        index.open(cryptor);
+    }
+
+    private void add(long sequence, long position, String text) {
+        index.add(new HistoryEntry(sequence, position, 0, "contact", true, text));
+    }
+
+    private File getPostingsFile(String term) {
+        return new File(directory, cryptor.deriveName(term) + ".postings");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSearchOnLockedIndex() {
+        index.close();
+        index.search("hello", 10);
+    }
+
+    @Test
+    public void testOpenAndClose() {
+        assertTrue(index.isOpen());
+        index.close();
+        assertFalse(index.isOpen());
+    }
+
+    @Test
+    public void testTokenize() {
+        assertEquals(Arrays.asList("hello", "world", "42"),
+                Arrays.asList(SearchIndex.tokenize("Hello, world! 42 hello").toArray()));
+        assertTrue(SearchIndex.tokenize(" ,.!").isEmpty());
+    }
+
+    @Test
+    public void testSearch() {
+        add(0, 0, "hello world");
+        add(1, 100, "hello there");
+        add(2, 200, "the world");
+
+        assertEquals(Arrays.asList(100L, 0L), index.search("hello", 10));
+        assertEquals(Arrays.asList(0L), index.search("World Hello", 10));
+        assertEquals(Arrays.asList(200L), index.search("the", 10));
+        assertTrue(index.search("unknown", 10).isEmpty());
+        assertTrue(index.search("hello unknown", 10).isEmpty());
+        assertTrue(index.search("", 10).isEmpty());
+    }
+
+    @Test
+    public void testSearchWithMaximalResults() {
+        for (int i = 0; i < 5; i++) {
+            add(i, i * 10, "message");
+        }
+
+        assertEquals(Arrays.asList(40L, 30L), index.search("message", 2));
+    }
+
+    @Test
+    public void testSearchIntersectsLongLists() {
+        for (int i = 0; i < 100; i++) {
+            add(i, i * 10, i % 3 == 0 ? "common rare" : "common");
+        }
+
+        assertEquals(Arrays.asList(990L, 960L, 930L), index.search("common rare", 3));
+    }
+
+    @Test
+    public void testOpenReadsCheckpoint() {
+        assertEquals(NO_POSITION, index.getLastIndexedPosition());
+        add(0, 0, "hello world");
+        add(1, 100, "hello there");
+
+        index = new SearchIndex(directory);
+        index.open(cryptor);
+
+        assertEquals(Arrays.asList(100L, 0L), index.search("hello", 10));
+        assertEquals(100, index.getLastIndexedPosition());
+    }
+
+    @Test
+    public void testSearchDecryptsOnlyQueriedTerms() throws Exception {
+        add(0, 0, "hello world");
+
+        try (RandomAccessFile access = new RandomAccessFile(getPostingsFile("world"), "rw")) {
+            access.writeLong(42);
+        }
+
+        index.open(cryptor);
+
+        assertEquals(Arrays.asList(0L), index.search("hello", 10));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSearchOnDamagedPostings() throws Exception {
+        add(0, 0, "hello");
+
+        try (RandomAccessFile access = new RandomAccessFile(getPostingsFile("hello"), "rw")) {
+            access.writeLong(42);
+        }
+
+        index.search("hello", 10);
+    }
+
+    @Test
+    public void testFilesAreEncrypted() throws Exception {
+        add(0, 0, "secret");
+
+        for (File file : directory.listFiles()) {
+            byte[] content = Files.readAllBytes(file.toPath());
+            assertFalse(file.getName().contains("secret"));
+            assertFalse(new String(content, "ISO-8859-1").contains("secret"));
+        }
+    }
+
+    @Test
+    public void testAddCutsOffIncompleteEntry() throws Exception {
+        add(0, 0, "hello");
+        File file = getPostingsFile("hello");
+        long validLength = file.length();
+
+        try (RandomAccessFile access = new RandomAccessFile(file, "rw")) {
+            access.setLength(validLength + 5);
+        }
+
+        assertEquals(Arrays.asList(0L), index.search("hello", 10));
+
+        add(1, 100, "hello");
+
+        assertEquals(2 * validLength, file.length());
+        assertEquals(Arrays.asList(100L, 0L), index.search("hello", 10));
+    }
+
+    @Test
+    public void testSearchSkipsRepeatedPositions() {
+        add(0, 0, "hello world");
+        add(1, 100, "hello world");
+        add(1, 100, "hello world"); // Repeated after an interrupted call.
+
+        assertEquals(Arrays.asList(100L, 0L), index.search("hello", 10));
+        assertEquals(Arrays.asList(100L, 0L), index.search("hello world", 10));
+    }
+
+}
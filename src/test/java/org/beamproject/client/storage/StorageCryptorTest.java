@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.storage;
+
+import java.util.Arrays;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StorageCryptorTest {
+
+    private final byte[] PLAINTEXT = "hello beam".getBytes();
+    private byte[] masterKey;
+    private StorageCryptor cryptor;
+
+    @Before
+    public void setUp() {
+        masterKey = StorageCryptor.generateMasterKey();
+        cryptor = new StorageCryptor(masterKey, "test");
+    }
+
+    @Test
+    public void testGenerateMasterKey() {
+        byte[] generatedKey = StorageCryptor.generateMasterKey();
+
+        assertEquals(StorageCryptor.MASTER_KEY_LENGTH, generatedKey.length);
+        assertFalse(Arrays.equals(generatedKey, StorageCryptor.generateMasterKey()));
+    }
+
+    @Test
+    public void testStretchPassword() {
+        char[] stretchedPassword = StorageCryptor.stretchPassword("pass".toCharArray(), "salt".getBytes(), 1000);
+
+        assertEquals(StorageCryptor.MASTER_KEY_LENGTH * 2, stretchedPassword.length);
+        assertArrayEquals(stretchedPassword, StorageCryptor.stretchPassword("pass".toCharArray(), "salt".getBytes(), 1000));
+        assertFalse(Arrays.equals(stretchedPassword, StorageCryptor.stretchPassword("other".toCharArray(), "salt".getBytes(), 1000)));
+        assertFalse(Arrays.equals(stretchedPassword, StorageCryptor.stretchPassword("pass".toCharArray(), "salt".getBytes(), 1001)));
+    }
+
+    @Test
+    public void testComputeKeyCheck() {
+        char[] stretchedPassword = StorageCryptor.stretchPassword("pass".toCharArray(), "salt".getBytes(), 1000);
+        byte[] keyCheck = StorageCryptor.computeKeyCheck(stretchedPassword);
+
+        assertEquals(32, keyCheck.length);
+        assertArrayEquals(keyCheck, StorageCryptor.computeKeyCheck(stretchedPassword));
+        assertFalse(Arrays.equals(keyCheck, StorageCryptor.computeKeyCheck(
+                StorageCryptor.stretchPassword("other".toCharArray(), "salt".getBytes(), 1000))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStretchPasswordOnTooFewIterations() {
+        StorageCryptor.stretchPassword("pass".toCharArray(), "salt".getBytes(), StorageCryptor.MINIMAL_KDF_ITERATIONS - 1);
+    }
+
+    @Test
+    public void testCalibrateIterations() {
+        assertEquals(StorageCryptor.MINIMAL_KDF_ITERATIONS, StorageCryptor.calibrateIterations(0));
+        assertTrue(StorageCryptor.calibrateIterations(100) >= StorageCryptor.MINIMAL_KDF_ITERATIONS);
+    }
+
+    @Test
+    public void testEncryptAndDecrypt() {
+        byte[] record = cryptor.encrypt(PLAINTEXT);
+
+        assertEquals(PLAINTEXT.length + StorageCryptor.OVERHEAD, record.length);
+        assertArrayEquals(PLAINTEXT, cryptor.decrypt(record));
+    }
+
+    @Test
+    public void testEncryptUsesFreshIv() {
+        assertFalse(Arrays.equals(cryptor.encrypt(PLAINTEXT), cryptor.encrypt(PLAINTEXT)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecryptOnModifiedRecord() {
+        byte[] record = cryptor.encrypt(PLAINTEXT);
+        record[20] ^= 1;
+        cryptor.decrypt(record);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecryptOnOtherLabel() {
+        byte[] record = cryptor.encrypt(PLAINTEXT);
+        new StorageCryptor(masterKey, "other").decrypt(record);
+    }
+
+    @Test
+    public void testDeriveName() {
+        String name = cryptor.deriveName("contact");
+
+        assertEquals(32, name.length());
+        assertEquals(name, cryptor.deriveName("contact"));
+        assertFalse(name.equals(cryptor.deriveName("other contact")));
+        assertFalse(name.equals(new StorageCryptor(masterKey, "other").deriveName("contact")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecryptOnShortRecord() {
+        cryptor.decrypt(new byte[StorageCryptor.OVERHEAD - 1]);
+    }
+
+}
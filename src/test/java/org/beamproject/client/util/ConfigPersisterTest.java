@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+import org.beamproject.common.util.Files;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ConfigPersisterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private String path;
+    private Properties properties;
+    private ConfigPersister persister;
+
+    @Before
+    public void setUp() {
+        path = new File(temporaryFolder.getRoot(), "client.conf").getPath();
+        properties = new Properties();
+        properties.setProperty("key", "value");
+        persister = new ConfigPersister(new Files() {
+            @Override
+            public void storeProperies(Properties properties, String path) {
+                try (FileOutputStream output = new FileOutputStream(path)) {
+                    properties.store(output, null);
+                } catch (IOException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        });
+    }
+
+    private Properties read() throws IOException {
+        Properties stored = new Properties();
+
+        try (FileInputStream input = new FileInputStream(path)) {
+            stored.load(input);
+        }
+
+        return stored;
+    }
+
+    @Test
+    public void testStore() throws IOException {
+        assertTrue(persister.store(properties, path));
+
+        assertEquals("value", read().getProperty("key"));
+        assertFalse(new File(path + ConfigPersister.TEMPORARY_SUFFIX).exists());
+    }
+
+    @Test
+    public void testStoreOnUnchangedProperties() {
+        assertTrue(persister.store(properties, path));
+        assertFalse(persister.store(properties, path));
+
+        properties.setProperty("key", "another value");
+        assertTrue(persister.store(properties, path));
+    }
+
+    @Test
+    public void testStoreReplacesFile() throws IOException {
+        persister.store(properties, path);
+        properties.remove("key");
+        properties.setProperty("other", "value");
+
+        persister.store(properties, path);
+
+        assertEquals(properties, read());
+    }
+
+    @Test
+    public void testRemember() {
+        persister.remember(properties, path);
+
+        assertFalse(persister.store(properties, path));
+        assertFalse(new File(path).exists());
+    }
+
+    @Test
+    public void testFindChangedKeys() {
+        Properties before = new Properties();
+        before.setProperty("unchanged", "value");
+        before.setProperty("changed", "value");
+        before.setProperty("removed", "value");
+        Properties after = new Properties();
+        after.setProperty("unchanged", "value");
+        after.setProperty("changed", "another value");
+        after.setProperty("added", "value");
+
+        assertEquals(new HashSet<>(Arrays.asList("changed", "removed", "added")),
+                ConfigPersister.findChangedKeys(before, after));
+        assertTrue(ConfigPersister.findChangedKeys(after, after).isEmpty());
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.util;
+
+import java.awt.image.BufferedImage;
+import org.beamproject.common.User;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QrCodeCacheTest {
+
+    private final String ADDRESS = User.generate().getAddress();
+    private QrCodeCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new QrCodeCache(16);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorOnZeroBucketSize() {
+        new QrCodeCache(0);
+    }
+
+    @Test
+    public void testToBucket() {
+        assertEquals(16, cache.toBucket(-5));
+        assertEquals(16, cache.toBucket(0));
+        assertEquals(16, cache.toBucket(31));
+        assertEquals(32, cache.toBucket(32));
+        assertEquals(160, cache.toBucket(175));
+    }
+
+    @Test
+    public void testGet() {
+        BufferedImage image = cache.get(ADDRESS, 165);
+
+        assertEquals(160, image.getWidth());
+        assertSame(image, cache.get(ADDRESS, 170));
+        assertNotSame(image, cache.get(ADDRESS, 176));
+    }
+
+    @Test
+    public void testGetOnChangedAddress() {
+        BufferedImage image = cache.get(ADDRESS, 160);
+        String otherAddress = User.generate().getAddress();
+
+        assertNotSame(image, cache.get(otherAddress, 160));
+        assertNotSame(image, cache.get(ADDRESS, 160));
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.util;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.SwingUtilities;
+import org.beamproject.client.ExecutorFake;
+import org.beamproject.common.util.Executor;
+import org.beamproject.common.util.Task;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QrCodeRendererTest {
+
+    private List<Integer> renderedSideLengths;
+    private List<BufferedImage> shownImages;
+    private List<Boolean> shownOnEventDispatchThread;
+    private QrCodeRenderer.Source source;
+    private QrCodeRenderer.Target target;
+
+    @Before
+    public void setUp() {
+        renderedSideLengths = new ArrayList<>();
+        shownImages = new ArrayList<>();
+        shownOnEventDispatchThread = new ArrayList<>();
+        source = new QrCodeRenderer.Source() {
+            @Override
+            public BufferedImage render(int sideLength) {
+                renderedSideLengths.add(sideLength);
+                return new BufferedImage(sideLength, sideLength, BufferedImage.TYPE_INT_RGB);
+            }
+        };
+        target = new QrCodeRenderer.Target() {
+            @Override
+            public void show(BufferedImage image) {
+                shownImages.add(image);
+                shownOnEventDispatchThread.add(SwingUtilities.isEventDispatchThread());
+            }
+        };
+    }
+
+    @Test
+    public void testRequest() throws Exception {
+        QrCodeRenderer renderer = new QrCodeRenderer(new ExecutorFake(), source, target);
+
+        renderer.request(160);
+        waitForEventDispatchThread();
+
+        assertEquals(1, shownImages.size());
+        assertEquals(160, shownImages.get(0).getWidth());
+        assertTrue(shownOnEventDispatchThread.get(0));
+    }
+
+    @Test
+    public void testRequestCoalescesToLatestSize() throws Exception {
+        final List<Task> tasks = new ArrayList<>();
+        Executor deferringExecutor = new Executor() {
+            @Override
+            public void runAsync(Task task) {
+                tasks.add(task);
+            }
+        };
+        QrCodeRenderer renderer = new QrCodeRenderer(deferringExecutor, source, target);
+
+        renderer.request(100);
+        renderer.request(120);
+        renderer.request(140);
+        assertEquals(1, tasks.size());
+
+        tasks.get(0).run();
+        waitForEventDispatchThread();
+
+        assertEquals(1, renderedSideLengths.size());
+        assertEquals(140, (int) renderedSideLengths.get(0));
+        assertEquals(1, shownImages.size());
+    }
+
+    @Test
+    public void testRequestAfterRendering() throws Exception {
+        QrCodeRenderer renderer = new QrCodeRenderer(new ExecutorFake(), source, target);
+
+        renderer.request(100);
+        renderer.request(120);
+        waitForEventDispatchThread();
+
+        assertEquals(2, renderedSideLengths.size());
+        assertEquals(120, shownImages.get(1).getWidth());
+    }
+
+    private void waitForEventDispatchThread() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+    }
+
+}
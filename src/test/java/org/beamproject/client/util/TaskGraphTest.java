@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TaskGraphTest {
+
+    private ExecutorService executor;
+    private TaskGraph graph;
+    private List<String> completed;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+        graph = new TaskGraph(executor);
+        completed = Collections.synchronizedList(new ArrayList<String>());
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private Runnable record(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                completed.add(name);
+            }
+        };
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddOnDuplicateName() {
+        graph.add("a", record("a")).add("a", record("a"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddOnUnknownDependency() {
+        graph.add("a", record("a"), "b");
+    }
+
+    @Test
+    public void testRunRespectsDependencies() {
+        graph.add("a", record("a"))
+                .add("b", record("b"), "a")
+                .add("c", record("c"), "a")
+                .add("d", record("d"), "b", "c");
+
+        graph.run();
+
+        assertEquals(4, completed.size());
+        assertEquals("a", completed.get(0));
+        assertEquals("d", completed.get(3));
+        assertEquals(4, graph.getDurationsInMillis().size());
+    }
+
+    @Test
+    public void testRunIndependentTasksConcurrently() {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        Runnable awaitOther = new Runnable() {
+            @Override
+            public void run() {
+                bothStarted.countDown();
+
+                try {
+                    assertTrue(bothStarted.await(1, TimeUnit.SECONDS));
+                } catch (InterruptedException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        };
+
+        graph.add("a", awaitOther).add("b", awaitOther);
+
+        graph.run();
+    }
+
+    @Test
+    public void testRunSkipsDependentsOfFailedTask() {
+        graph.add("a", new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("failed");
+            }
+        })
+                .add("b", record("b"))
+                .add("c", record("c"), "a", "b")
+                .add("d", record("d"), "c");
+
+        try {
+            graph.run();
+            fail("The failure was not thrown.");
+        } catch (IllegalStateException ex) {
+            assertEquals("failed", ex.getMessage());
+        }
+
+        assertEquals(Collections.singletonList("b"), completed);
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-client.
+ *
+ * beam-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.client.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WriteBehindTest {
+
+    private ScheduledExecutorService scheduler;
+    private AtomicInteger writes;
+    private Runnable write;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        writes = new AtomicInteger();
+        write = new Runnable() {
+            @Override
+            public void run() {
+                writes.incrementAndGet();
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorOnNegativeQuietPeriod() {
+        new WriteBehind(write, -1, scheduler);
+    }
+
+    @Test
+    public void testRequestCoalescesWrites() throws InterruptedException {
+        WriteBehind writeBehind = new WriteBehind(write, 100, scheduler);
+
+        for (int i = 0; i < 10; i++) {
+            writeBehind.request();
+        }
+
+        assertTrue(writeBehind.isPending());
+        Thread.sleep(500);
+
+        assertEquals(1, writes.get());
+        assertFalse(writeBehind.isPending());
+    }
+
+    @Test
+    public void testFlush() {
+        WriteBehind writeBehind = new WriteBehind(write, TimeUnit.HOURS.toMillis(1), scheduler);
+        writeBehind.request();
+        writeBehind.request();
+
+        writeBehind.flush();
+
+        assertEquals(1, writes.get());
+        assertFalse(writeBehind.isPending());
+
+        writeBehind.flush();
+        assertEquals(1, writes.get());
+    }
+
+    @Test
+    public void testFlushWaitsForRunningWrite() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        WriteBehind writeBehind = new WriteBehind(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                sleep(200);
+                writes.incrementAndGet();
+            }
+        }, 0, scheduler);
+
+        writeBehind.request();
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        writeBehind.flush();
+
+        assertEquals(1, writes.get());
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}